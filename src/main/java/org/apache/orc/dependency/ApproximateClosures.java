@@ -0,0 +1,233 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.orc.dependency;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Comparator;
+
+/**
+ * Estimates the size of each class's transitive dependency set without
+ * building a set per class. The classes are grouped into strongly connected
+ * components and a fixed size sketch is propagated from each component to
+ * the components that depend on it. A sketch is dropped as soon as every
+ * component that depends on it has been computed.
+ *
+ * The exact closures of the top classes in the ranking can be computed
+ * afterwards with -exact.
+ *
+ * Usage: ApproximateClosures [-precision p] [-exact k] [-limit n]
+ *            (graph.tgf|saved.graph)
+ */
+public class ApproximateClosures {
+  final DependencyGraph graph;
+  final StronglyConnected scc;
+  // the estimated closure size of each class
+  final long[] estimate;
+  // the exact closure size of each class or -1 if it wasn't computed
+  final int[] exact;
+
+  ApproximateClosures(DependencyGraph graph, int precision) {
+    this.graph = graph;
+    int n = graph.size();
+    scc = new StronglyConnected(n, graph.offsets, graph.edges);
+    estimate = estimate(StronglyConnected.wrap(graph.offsets, graph.edges),
+        scc, precision);
+    exact = new int[n];
+    Arrays.fill(exact, -1);
+  }
+
+  /**
+   * Estimate the closure size of each node by propagating sketches from the
+   * sinks up. The edges are read in order once to count them and once more
+   * component by component, so they may be kept on disk.
+   * @param edges the edges of the graph
+   * @param scc the components of the graph
+   * @param precision the log2 of the bytes in each sketch
+   * @return the estimated closure size of each node
+   */
+  static long[] estimate(StronglyConnected.Edges edges, StronglyConnected scc,
+                         int precision) {
+    int n = scc.component.length;
+    long[] result = new long[n];
+    // count the edges into each component from other components
+    int[] pending = new int[scc.count];
+    for(int v=0; v < n; ++v) {
+      for(long e=edges.start(v); e < edges.end(v); ++e) {
+        int target = scc.component[edges.get(e)];
+        if (target != scc.component[v]) {
+          pending[target] += 1;
+        }
+      }
+    }
+    CardinalitySketch[] sketches = new CardinalitySketch[scc.count];
+    int[] lastMerged = new int[scc.count];
+    Arrays.fill(lastMerged, -1);
+    // successors always have lower numbers, so they are done first
+    for(int c=0; c < scc.count; ++c) {
+      CardinalitySketch sketch = new CardinalitySketch(precision);
+      for(int m=scc.memberOffsets[c]; m < scc.memberOffsets[c + 1]; ++m) {
+        int v = scc.members[m];
+        sketch.add(v);
+        for(long e=edges.start(v); e < edges.end(v); ++e) {
+          int target = scc.component[edges.get(e)];
+          if (target != c) {
+            if (lastMerged[target] != c) {
+              sketch.merge(sketches[target]);
+              lastMerged[target] = c;
+            }
+            if (--pending[target] == 0) {
+              sketches[target] = null;
+            }
+          }
+        }
+      }
+      if (pending[c] != 0) {
+        sketches[c] = sketch;
+      }
+      // the sketch includes the component, which only counts for cycles
+      long size = sketch.estimate();
+      if (!scc.cyclic[c]) {
+        size = Math.max(0, size - 1);
+      }
+      for(int m=scc.memberOffsets[c]; m < scc.memberOffsets[c + 1]; ++m) {
+        result[scc.members[m]] = size;
+      }
+    }
+    return result;
+  }
+
+  /**
+   * Rank the reachable, non-root classes by their estimated closure.
+   */
+  Integer[] rank() {
+    int count = 0;
+    for(int v=0; v < graph.size(); ++v) {
+      if (isRanked(v)) {
+        count += 1;
+      }
+    }
+    Integer[] result = new Integer[count];
+    count = 0;
+    for(int v=0; v < graph.size(); ++v) {
+      if (isRanked(v)) {
+        result[count++] = v;
+      }
+    }
+    sort(result, 0, result.length);
+    return result;
+  }
+
+  private boolean isRanked(int v) {
+    return graph.depth[v] != 0 && graph.depth[v] != Integer.MAX_VALUE;
+  }
+
+  private long getSize(int v) {
+    return exact[v] >= 0 ? exact[v] : estimate[v];
+  }
+
+  private void sort(Integer[] classes, int from, int to) {
+    Arrays.sort(classes, from, to, new Comparator<Integer>() {
+      @Override
+      public int compare(Integer left, Integer right) {
+        long l = getSize(left);
+        long r = getSize(right);
+        if (l != r) {
+          return l > r ? -1 : 1;
+        }
+        return graph.names[left].compareTo(graph.names[right]);
+      }
+    });
+  }
+
+  /**
+   * Compute the exact closures of the first classes in the ranking and
+   * re-sort them.
+   */
+  void refine(Integer[] ranked, int k) {
+    k = Math.min(k, ranked.length);
+    int[] seen = new int[graph.size()];
+    int[] queue = new int[graph.size()];
+    for(int i=0; i < k; ++i) {
+      int v = ranked[i];
+      // use a different mark for each search, so seen is never cleared
+      int mark = i + 1;
+      int head = 0;
+      int tail = 0;
+      for(int e=graph.offsets[v]; e < graph.offsets[v + 1]; ++e) {
+        int w = graph.edges[e];
+        if (seen[w] != mark) {
+          seen[w] = mark;
+          queue[tail++] = w;
+        }
+      }
+      while (head < tail) {
+        int u = queue[head++];
+        for(int e=graph.offsets[u]; e < graph.offsets[u + 1]; ++e) {
+          int w = graph.edges[e];
+          if (seen[w] != mark) {
+            seen[w] = mark;
+            queue[tail++] = w;
+          }
+        }
+      }
+      exact[v] = tail;
+    }
+    sort(ranked, 0, k);
+  }
+
+  public static void main(String[] args) throws IOException {
+    int precision = 10;
+    int exactCount = 0;
+    int limit = 100;
+    int arg = 0;
+    while (arg < args.length - 1) {
+      if ("-precision".equals(args[arg])) {
+        precision = Integer.parseInt(args[arg + 1]);
+      } else if ("-exact".equals(args[arg])) {
+        exactCount = Integer.parseInt(args[arg + 1]);
+      } else if ("-limit".equals(args[arg])) {
+        limit = Integer.parseInt(args[arg + 1]);
+      } else {
+        throw new IllegalArgumentException("Unknown option " + args[arg]);
+      }
+      arg += 2;
+    }
+    DependencyGraph graph = DependencyGraph.load(args[arg], false);
+    long start = System.nanoTime();
+    ApproximateClosures closures = new ApproximateClosures(graph, precision);
+    Integer[] ranked = closures.rank();
+    long middle = System.nanoTime();
+    closures.refine(ranked, exactCount);
+    long end = System.nanoTime();
+    System.out.println("Estimated closures of " + graph.size() +
+        " classes in " + closures.scc.count + " components in " +
+        (middle - start) / 1000000 + " ms.");
+    if (exactCount > 0) {
+      System.out.println("Computed " + Math.min(exactCount, ranked.length) +
+          " exact closures in " + (end - middle) / 1000000 + " ms.");
+    }
+    System.out.println();
+    for(int i=0; i < ranked.length && i < limit; ++i) {
+      int cls = ranked[i];
+      System.out.println("  Class " + graph.names[cls] + " (" +
+          (closures.exact[cls] >= 0 ? Integer.toString(closures.exact[cls])
+              : "~" + closures.estimate[cls]) + ", " + graph.depth[cls] + ")");
+    }
+  }
+}
@@ -0,0 +1,339 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.orc.dependency;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Evaluates several sets of roots against one scan of the project. Each
+ * target gets one bit of a long, so a single breadth first search computes
+ * the closures and depths of up to 64 targets at the same time. The classes
+ * at depth 1 are ranked by how much of their target they pull in, which
+ * is found the same way with one bit for each of 64 classes.
+ *
+ * Usage: BatchAnalyzer (graph.tgf|saved.graph) name=prefix[,prefix]...
+ */
+public class BatchAnalyzer {
+  static final int MAX_TARGETS = 64;
+
+  final DependencyGraph graph;
+  final String[] targetNames;
+  // the targets that reach each class
+  final long[] reached;
+  // the number of classes first reached at each depth for each target
+  final List<int[]> depthCounts = new ArrayList<>();
+  // the classes at depth 1 for each target
+  final List<List<Integer>> firstLevel = new ArrayList<>();
+  // for each target, the number of its non-root classes that each of its
+  // depth 1 classes reaches, in the same order as firstLevel
+  final List<int[]> firstLevelReach = new ArrayList<>();
+
+  BatchAnalyzer(DependencyGraph graph, String[] targetNames,
+                String[][] prefixes) {
+    if (targetNames.length > MAX_TARGETS) {
+      throw new IllegalArgumentException("At most " + MAX_TARGETS +
+          " targets are supported.");
+    }
+    this.graph = graph;
+    this.targetNames = targetNames;
+    for(int t=0; t < targetNames.length; ++t) {
+      firstLevel.add(new ArrayList<Integer>());
+    }
+    List<List<String>> rules = new ArrayList<>(prefixes.length);
+    for(String[] targetPrefixes: prefixes) {
+      rules.add(Arrays.asList(targetPrefixes));
+    }
+    int n = graph.size();
+    reached = new long[n];
+    long[] roots = new long[n];
+    long[] frontier = new long[n];
+    int[] active = new int[n];
+    int activeCount = 0;
+    for(int v=0; v < n; ++v) {
+      for(int t=0; t < rules.size(); ++t) {
+        if (Prefixes.matches(rules.get(t), graph.names[v])) {
+          frontier[v] |= 1L << t;
+        }
+      }
+      if (frontier[v] != 0) {
+        reached[v] = frontier[v];
+        roots[v] = frontier[v];
+        active[activeCount++] = v;
+      }
+    }
+    countLevel(0, active, activeCount, frontier);
+    long[] next = new long[n];
+    int[] nextActive = new int[n];
+    int level = 0;
+    while (activeCount > 0) {
+      level += 1;
+      int nextCount = expand(graph, reached, frontier, active, activeCount,
+          next, nextActive, null);
+      countLevel(level, nextActive, nextCount, next);
+      // swap the frontiers
+      long[] tmpBits = frontier;
+      frontier = next;
+      next = tmpBits;
+      int[] tmpActive = active;
+      active = nextActive;
+      nextActive = tmpActive;
+      activeCount = nextCount;
+    }
+    for(int t=0; t < targetNames.length; ++t) {
+      firstLevelReach.add(countReach(firstLevel.get(t), 1L << t, roots,
+          frontier, next, active, nextActive));
+    }
+  }
+
+  /**
+   * Take one step of the bit parallel search. Each class in the frontier
+   * passes the bits that haven't reached its children yet to them.
+   * @param reached the bits that have reached each class
+   * @param frontier the bits that each active class passes on, which are
+   *                 cleared
+   * @param next the bits that reached each class in this step
+   * @param counts if not null, counts[b] is incremented for each class that
+   *               bit b newly reaches
+   * @return the number of classes in nextActive
+   */
+  private static int expand(DependencyGraph graph, long[] reached,
+                            long[] frontier, int[] active, int activeCount,
+                            long[] next, int[] nextActive, int[] counts) {
+    int nextCount = 0;
+    for(int i=0; i < activeCount; ++i) {
+      int v = active[i];
+      long bits = frontier[v];
+      for(int e=graph.offsets[v]; e < graph.offsets[v + 1]; ++e) {
+        int w = graph.edges[e];
+        long added = bits & ~reached[w];
+        if (added != 0) {
+          if (next[w] == 0) {
+            nextActive[nextCount++] = w;
+          }
+          reached[w] |= added;
+          next[w] |= added;
+          if (counts != null) {
+            while (added != 0) {
+              counts[Long.numberOfTrailingZeros(added)] += 1;
+              added &= added - 1;
+            }
+          }
+        }
+      }
+      frontier[v] = 0;
+    }
+    return nextCount;
+  }
+
+  /**
+   * Count the classes that each of a target's depth 1 classes reaches,
+   * other than the target's roots. The classes are searched 64 at a time
+   * with one bit each.
+   * The frontier, next, active and nextActive arrays are only working
+   * space, but frontier and next must be clear.
+   * @param classes the target's depth 1 classes
+   * @param target the target's bit in roots
+   * @param roots the targets that start at each class
+   * @return the count for each class in order
+   */
+  private int[] countReach(List<Integer> classes, long target, long[] roots,
+                           long[] frontier, long[] next, int[] active,
+                           int[] nextActive) {
+    int[] result = new int[classes.size()];
+    long[] seen = new long[graph.size()];
+    // count the roots as already seen, so that the search doesn't go
+    // through them
+    for(int v=0; v < seen.length; ++v) {
+      if ((roots[v] & target) != 0) {
+        seen[v] = -1L;
+      }
+    }
+    for(int base=0; base < classes.size(); base += Long.SIZE) {
+      int batch = Math.min(Long.SIZE, classes.size() - base);
+      int activeCount = 0;
+      for(int b=0; b < batch; ++b) {
+        int v = classes.get(base + b);
+        frontier[v] = 1L << b;
+        active[activeCount++] = v;
+      }
+      int[] counts = new int[Long.SIZE];
+      while (activeCount > 0) {
+        activeCount = expand(graph, seen, frontier, active, activeCount,
+            next, nextActive, counts);
+        // swap the frontiers
+        long[] tmpBits = frontier;
+        frontier = next;
+        next = tmpBits;
+        int[] tmpActive = active;
+        active = nextActive;
+        nextActive = tmpActive;
+      }
+      System.arraycopy(counts, 0, result, base, batch);
+      for(int v=0; v < seen.length; ++v) {
+        seen[v] = (roots[v] & target) != 0 ? -1L : 0;
+      }
+    }
+    return result;
+  }
+
+  private void countLevel(int level, int[] active, int count, long[] bits) {
+    // always add the roots, even if there are none, so print can use them
+    if (count == 0 && level > 0) {
+      return;
+    }
+    int[] counts = new int[targetNames.length];
+    for(int i=0; i < count; ++i) {
+      int v = active[i];
+      long mask = bits[v];
+      while (mask != 0) {
+        int t = Long.numberOfTrailingZeros(mask);
+        counts[t] += 1;
+        if (level == 1) {
+          firstLevel.get(t).add(v);
+        }
+        mask &= mask - 1;
+      }
+    }
+    depthCounts.add(counts);
+  }
+
+  int getReachable(int target) {
+    int result = 0;
+    for(int[] counts: depthCounts) {
+      result += counts[target];
+    }
+    return result;
+  }
+
+  void print(int limit) {
+    for(int t=0; t < targetNames.length; ++t) {
+      System.out.println();
+      System.out.println("Target " + targetNames[t] + ": " +
+          depthCounts.get(0)[t] + " roots, " + getReachable(t) +
+          " reachable classes");
+      for(int d=0; d < depthCounts.size(); ++d) {
+        if (depthCounts.get(d)[t] != 0) {
+          System.out.println("  Depth " + d + ": " + depthCounts.get(d)[t]);
+        }
+      }
+      final List<Integer> direct = firstLevel.get(t);
+      final int[] reach = firstLevelReach.get(t);
+      Integer[] sorted = new Integer[direct.size()];
+      for(int i=0; i < sorted.length; ++i) {
+        sorted[i] = i;
+      }
+      Arrays.sort(sorted, new Comparator<Integer>() {
+        @Override
+        public int compare(Integer left, Integer right) {
+          if (reach[left] != reach[right]) {
+            return reach[left] > reach[right] ? -1 : 1;
+          }
+          return graph.names[direct.get(left)].compareTo(
+              graph.names[direct.get(right)]);
+        }
+      });
+      System.out.println("  Largest depth 1 classes:");
+      for(int i=0; i < sorted.length && i < limit; ++i) {
+        int posn = sorted[i];
+        System.out.println("    " + graph.names[direct.get(posn)] + " (" +
+            reach[posn] + ")");
+      }
+    }
+    printOverlap();
+  }
+
+  private void printOverlap() {
+    // group the classes by which targets reach them
+    Map<Long, Integer> masks = new HashMap<>();
+    for(long mask: reached) {
+      if (mask != 0) {
+        Integer old = masks.get(mask);
+        masks.put(mask, old == null ? 1 : old + 1);
+      }
+    }
+    int targets = targetNames.length;
+    long[][] shared = new long[targets][targets];
+    long[] exclusive = new long[targets];
+    long all = targets == MAX_TARGETS ? -1L : (1L << targets) - 1;
+    long sharedByAll = 0;
+    for(Map.Entry<Long, Integer> entry: masks.entrySet()) {
+      long mask = entry.getKey();
+      int count = entry.getValue();
+      if (Long.bitCount(mask) == 1) {
+        exclusive[Long.numberOfTrailingZeros(mask)] += count;
+      }
+      if (mask == all) {
+        sharedByAll += count;
+      }
+      for(int i=0; i < targets; ++i) {
+        if ((mask & (1L << i)) != 0) {
+          for(int j=i + 1; j < targets; ++j) {
+            if ((mask & (1L << j)) != 0) {
+              shared[i][j] += count;
+            }
+          }
+        }
+      }
+    }
+    System.out.println();
+    System.out.println("Overlap:");
+    for(int i=0; i < targets; ++i) {
+      for(int j=i + 1; j < targets; ++j) {
+        System.out.println("  " + targetNames[i] + " & " + targetNames[j] +
+            ": " + shared[i][j]);
+      }
+    }
+    System.out.println("  Shared by all: " + sharedByAll);
+    System.out.println("Exclusive:");
+    for(int t=0; t < targets; ++t) {
+      System.out.println("  " + targetNames[t] + ": " + exclusive[t]);
+    }
+  }
+
+  public static void main(String[] args) throws IOException {
+    if (args.length < 2) {
+      System.err.println("Usage: BatchAnalyzer (graph.tgf|saved.graph)" +
+          " name=prefix[,prefix]...");
+      System.exit(1);
+    }
+    // the searches find everything that is needed, so skip the closures
+    DependencyGraph graph = DependencyGraph.load(args[0], false);
+    String[] names = new String[args.length - 1];
+    String[][] prefixes = new String[names.length][];
+    for(int t=0; t < names.length; ++t) {
+      String[] parts = args[t + 1].split("=", 2);
+      if (parts.length != 2) {
+        throw new IllegalArgumentException("Bad target " + args[t + 1]);
+      }
+      names[t] = parts[0];
+      prefixes[t] = parts[1].split(",");
+    }
+    long start = System.nanoTime();
+    BatchAnalyzer batch = new BatchAnalyzer(graph, names, prefixes);
+    long end = System.nanoTime();
+    System.out.println("Analyzed " + names.length + " targets over " +
+        graph.size() + " classes in " + (end - start) / 1000000 + " ms.");
+    batch.print(20);
+  }
+}
@@ -0,0 +1,103 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.orc.dependency;
+
+/**
+ * A HyperLogLog sketch of a set of class ids. It uses 2^precision bytes
+ * regardless of the size of the set and has a relative standard error of
+ * about 1.04 / sqrt(2^precision). Sketches of two sets can be merged to
+ * get the sketch of their union.
+ */
+class CardinalitySketch {
+  static final int MIN_PRECISION = 4;
+  static final int MAX_PRECISION = 16;
+
+  private final int precision;
+  private final byte[] registers;
+
+  CardinalitySketch(int precision) {
+    if (precision < MIN_PRECISION || precision > MAX_PRECISION) {
+      throw new IllegalArgumentException("Precision must be between " +
+          MIN_PRECISION + " and " + MAX_PRECISION);
+    }
+    this.precision = precision;
+    registers = new byte[1 << precision];
+  }
+
+  /**
+   * Spread the bits of the id over the whole long.
+   */
+  static long hash(int id) {
+    long z = id * 0x9E3779B97F4A7C15L;
+    z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+    z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+    return z ^ (z >>> 31);
+  }
+
+  void add(int id) {
+    long h = hash(id);
+    int register = (int) (h >>> (64 - precision));
+    int rank = Long.numberOfLeadingZeros((h << precision) |
+        (1L << (precision - 1))) + 1;
+    if (rank > registers[register]) {
+      registers[register] = (byte) rank;
+    }
+  }
+
+  void merge(CardinalitySketch other) {
+    byte[] theirs = other.registers;
+    for(int i=0; i < registers.length; ++i) {
+      if (theirs[i] > registers[i]) {
+        registers[i] = theirs[i];
+      }
+    }
+  }
+
+  long estimate() {
+    int m = registers.length;
+    double sum = 0;
+    int zeros = 0;
+    for(byte register: registers) {
+      sum += 1.0 / (1L << register);
+      if (register == 0) {
+        zeros += 1;
+      }
+    }
+    double alpha;
+    switch (m) {
+      case 16:
+        alpha = 0.673;
+        break;
+      case 32:
+        alpha = 0.697;
+        break;
+      case 64:
+        alpha = 0.709;
+        break;
+      default:
+        alpha = 0.7213 / (1 + 1.079 / m);
+    }
+    double estimate = alpha * m * m / sum;
+    // use linear counting for small sets
+    if (estimate <= 2.5 * m && zeros != 0) {
+      estimate = m * Math.log((double) m / zeros);
+    }
+    return Math.round(estimate);
+  }
+}
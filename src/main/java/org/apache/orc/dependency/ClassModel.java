@@ -34,8 +34,14 @@ class ClassModel {
   int depth = Integer.MAX_VALUE;
   BitSet depends = null;
   int dependsCount = 0;
+  // the weights of the class and their totals over the classes that it
+  // depends on, indexed by Weight.ordinal()
+  int[] sizes = Weight.getSizes(null);
+  long[] dependsSizes = new long[Weight.SIZE];
   List<ClassModel> prev = new ArrayList<ClassModel>();
   List<ClassModel> next = new ArrayList<ClassModel>();
+  // the classes loaded by name through service files or string constants
+  List<ClassModel> indirect = new ArrayList<ClassModel>();
 
   ClassModel(JarModel jar, String name, int id) {
     this.jar = jar;
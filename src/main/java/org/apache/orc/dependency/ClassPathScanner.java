@@ -0,0 +1,425 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.orc.dependency;
+
+import org.objectweb.asm.ClassReader;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+/**
+ * Reads the classes from jars and class directories. Each location is
+ * scanned by its own thread into its own visitor, and the results are
+ * returned in classpath order so that the first definition of a class
+ * still wins. The service descriptors are read in the same pass.
+ */
+class ClassPathScanner {
+  static final String SERVICES = "META-INF/services/";
+  private static final int CACHE_MAGIC = 0x44455053; // "DEPS"
+  private static final int CACHE_VERSION = 2;
+
+  // the directory to cache the scans of jars in or null to not cache them
+  static File cacheDir = null;
+  // the bytes allocated by the scanning threads, so that the allocations of
+  // the thread pool can be measured
+  private static final AtomicLong scanAllocated = new AtomicLong();
+
+  /**
+   * The classes found in one jar or directory.
+   */
+  static class Scan {
+    final String location;
+    // the classes in the order they were found
+    final List<String> classes = new ArrayList<>();
+    final DependencyVisitor dependencies = new DependencyVisitor();
+    // the implementations listed for each service interface
+    final Map<String, Set<String>> services = new TreeMap<>();
+
+    Scan(String location) {
+      this.location = location;
+    }
+
+    void read(String path, InputStream in) throws IOException {
+      classes.add(ProjectModel.getClassnameFromPath(path));
+      ClassReader reader = new ClassReader(in);
+      reader.accept(dependencies, 0);
+      DependencyVisitor.ClassSize size = dependencies.getSize(
+          ProjectModel.getClassnameFromPath(reader.getClassName()));
+      size.bytes = reader.b.length;
+      size.constants = reader.getItemCount();
+    }
+
+    /**
+     * Read a ServiceLoader provider file, which lists one implementation
+     * per line with # starting a comment.
+     * @param service the name of the service interface
+     */
+    void readServices(String service, InputStream in) throws IOException {
+      Set<String> implementations = services.get(service);
+      if (implementations == null) {
+        implementations = new TreeSet<>();
+        services.put(service, implementations);
+      }
+      readProviders(in, implementations);
+    }
+  }
+
+  /**
+   * Read the implementations listed in a provider file, dropping the
+   * comments and blank lines.
+   */
+  static void readProviders(InputStream in,
+                            Collection<String> result) throws IOException {
+    BufferedReader reader = new BufferedReader(
+        new InputStreamReader(in, StandardCharsets.UTF_8));
+    String line;
+    while ((line = reader.readLine()) != null) {
+      int comment = line.indexOf('#');
+      if (comment >= 0) {
+        line = line.substring(0, comment);
+      }
+      line = line.trim();
+      if (!line.isEmpty()) {
+        result.add(line);
+      }
+    }
+  }
+
+  /**
+   * Get the service interface of a provider file.
+   * @return the name of the service or null if it isn't a provider file
+   */
+  static String getService(String path) {
+    if (path.startsWith(SERVICES) && path.length() > SERVICES.length() &&
+        path.indexOf('/', SERVICES.length()) < 0) {
+      return path.substring(SERVICES.length());
+    }
+    return null;
+  }
+
+  /**
+   * Split a classpath string into its locations.
+   */
+  static List<String> split(String classpath) {
+    List<String> result = new ArrayList<>();
+    for(String part: classpath.split(File.pathSeparator)) {
+      if (!part.isEmpty()) {
+        result.add(part);
+      }
+    }
+    return result;
+  }
+
+  /**
+   * Does the string look like a classpath rather than a single file of
+   * another kind?
+   */
+  static boolean isClassPath(String path) {
+    return path.contains(File.pathSeparator) || new File(path).isDirectory() ||
+        path.endsWith(".jar") || path.endsWith(".zip");
+  }
+
+  /**
+   * Get the name of a class file relative to the directory that holds it.
+   */
+  static String getRelativePath(Path root, Path file) {
+    return root.relativize(file).toString().replace(File.separatorChar, '/');
+  }
+
+  static Scan scan(String location) throws IOException {
+    final Scan result = new Scan(location);
+    final Path root = new File(location).toPath();
+    if (Files.isDirectory(root)) {
+      List<Path> files = new ArrayList<>();
+      collectClassFiles(root, files);
+      // sort the files so that the order doesn't depend on the filesystem
+      Collections.sort(files);
+      for(Path file: files) {
+        try (InputStream in = Files.newInputStream(file)) {
+          result.read(getRelativePath(root, file), in);
+        }
+      }
+      Path services = root.resolve(SERVICES);
+      if (Files.isDirectory(services)) {
+        try (DirectoryStream<Path> dir = Files.newDirectoryStream(services)) {
+          for(Path file: dir) {
+            if (Files.isRegularFile(file)) {
+              try (InputStream in = Files.newInputStream(file)) {
+                result.readServices(file.getFileName().toString(), in);
+              }
+            }
+          }
+        }
+      }
+    } else {
+      try (ZipFile f = new ZipFile(location)) {
+        Enumeration<? extends ZipEntry> en = f.entries();
+        while (en.hasMoreElements()) {
+          ZipEntry e = en.nextElement();
+          String service = getService(e.getName());
+          if (e.getName().endsWith(".class")) {
+            try (InputStream in = f.getInputStream(e)) {
+              result.read(e.getName(), in);
+            }
+          } else if (service != null && !e.isDirectory()) {
+            try (InputStream in = f.getInputStream(e)) {
+              result.readServices(service, in);
+            }
+          }
+        }
+      }
+    }
+    return result;
+  }
+
+  private static File getCacheFile(File jar) {
+    return new File(cacheDir, jar.getName() + "-" +
+        Integer.toHexString(jar.getAbsolutePath().hashCode()) + ".scan");
+  }
+
+  /**
+   * Scan a location, reusing the cached scan of a jar if the jar hasn't
+   * changed since. Directories are always scanned.
+   */
+  static Scan scanCached(String location) throws IOException {
+    File jar = new File(location);
+    if (cacheDir == null || jar.isDirectory()) {
+      return scan(location);
+    }
+    File cache = getCacheFile(jar);
+    if (cache.exists()) {
+      Scan result = readCache(location, jar, cache);
+      if (result != null) {
+        return result;
+      }
+    }
+    Scan result = scan(location);
+    writeCache(result, jar, cache);
+    return result;
+  }
+
+  private static void writeStrings(DataOutputStream out,
+                                   Collection<String> values
+                                   ) throws IOException {
+    out.writeInt(values.size());
+    for(String value: values) {
+      out.writeUTF(value);
+    }
+  }
+
+  private static Set<String> readStrings(DataInputStream in
+                                         ) throws IOException {
+    int count = in.readInt();
+    Set<String> result = new HashSet<>(count * 2);
+    for(int i=0; i < count; ++i) {
+      result.add(in.readUTF());
+    }
+    return result;
+  }
+
+  /**
+   * Write the scan to a temporary file and move it into place, so that a
+   * concurrent build never sees a partial cache file.
+   */
+  static void writeCache(Scan scan, File jar, File cache) throws IOException {
+    File tmp = File.createTempFile(jar.getName(), ".tmp", cacheDir);
+    try {
+      try (DataOutputStream out = new DataOutputStream(
+          new BufferedOutputStream(new FileOutputStream(tmp), 64 * 1024))) {
+        out.writeInt(CACHE_MAGIC);
+        out.writeInt(CACHE_VERSION);
+        out.writeUTF(jar.getAbsolutePath());
+        out.writeLong(jar.length());
+        out.writeLong(jar.lastModified());
+        out.writeInt(scan.classes.size());
+        for(String name: scan.classes) {
+          out.writeUTF(name);
+          writeStrings(out, scan.dependencies.getDependencies(name));
+          writeStrings(out, scan.dependencies.getClassNameStrings(name));
+          DependencyVisitor.ClassSize size = scan.dependencies.getSize(name);
+          out.writeInt(size == null ? 0 : size.bytes);
+          out.writeInt(size == null ? 0 : size.methods);
+          out.writeInt(size == null ? 0 : size.constants);
+        }
+        out.writeInt(scan.services.size());
+        for(Map.Entry<String, Set<String>> service: scan.services.entrySet()) {
+          out.writeUTF(service.getKey());
+          writeStrings(out, service.getValue());
+        }
+      }
+      Files.move(tmp.toPath(), cache.toPath(),
+          StandardCopyOption.ATOMIC_MOVE);
+    } finally {
+      Files.deleteIfExists(tmp.toPath());
+    }
+  }
+
+  /**
+   * Read a cached scan. A cache file that can't be read, such as a
+   * truncated or corrupt one, is treated as a miss, so that it is rescanned
+   * and overwritten.
+   * @return the scan or null if the jar has changed since it was cached
+   */
+  static Scan readCache(String location, File jar, File cache) {
+    try (DataInputStream in = new DataInputStream(
+        new BufferedInputStream(new FileInputStream(cache), 64 * 1024))) {
+      if (in.readInt() != CACHE_MAGIC || in.readInt() != CACHE_VERSION ||
+          !jar.getAbsolutePath().equals(in.readUTF()) ||
+          in.readLong() != jar.length() ||
+          in.readLong() != jar.lastModified()) {
+        return null;
+      }
+      Scan result = new Scan(location);
+      int classes = in.readInt();
+      for(int i=0; i < classes; ++i) {
+        String name = in.readUTF();
+        result.classes.add(name);
+        result.dependencies.addDependencies(name, readStrings(in));
+        result.dependencies.addClassNameStrings(name, readStrings(in));
+        DependencyVisitor.ClassSize size = new DependencyVisitor.ClassSize();
+        size.bytes = in.readInt();
+        size.methods = in.readInt();
+        size.constants = in.readInt();
+        result.dependencies.setSize(name, size);
+      }
+      int services = in.readInt();
+      for(int i=0; i < services; ++i) {
+        String service = in.readUTF();
+        result.services.put(service, new TreeSet<>(readStrings(in)));
+      }
+      return result;
+    } catch (IOException | RuntimeException e) {
+      return null;
+    }
+  }
+
+  static void collectClassFiles(Path root,
+                                final List<Path> files) throws IOException {
+    Files.walkFileTree(root, new SimpleFileVisitor<Path>() {
+      @Override
+      public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) {
+        if (file.toString().endsWith(".class")) {
+          files.add(file);
+        }
+        return FileVisitResult.CONTINUE;
+      }
+    });
+  }
+
+  /**
+   * Get the bytes that the current thread has allocated.
+   * @return the bytes or -1 if the JVM can't measure it
+   */
+  static long getThreadAllocatedBytes() {
+    ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+    if (threads instanceof com.sun.management.ThreadMXBean) {
+      return ((com.sun.management.ThreadMXBean) threads)
+          .getThreadAllocatedBytes(Thread.currentThread().getId());
+    }
+    return -1;
+  }
+
+  /**
+   * Get the total bytes allocated by the threads that have scanned
+   * locations so far.
+   */
+  static long getScanAllocatedBytes() {
+    return scanAllocated.get();
+  }
+
+  /**
+   * Scan the locations in parallel.
+   * @return the scans in the same order as the locations
+   */
+  static List<Scan> scanAll(List<String> locations) throws IOException {
+    int threads = Math.max(1, Math.min(locations.size(),
+        Runtime.getRuntime().availableProcessors()));
+    ExecutorService pool = Executors.newFixedThreadPool(threads);
+    try {
+      List<Future<Scan>> futures = new ArrayList<>(locations.size());
+      for(final String location: locations) {
+        futures.add(pool.submit(new Callable<Scan>() {
+          @Override
+          public Scan call() throws IOException {
+            long start = getThreadAllocatedBytes();
+            try {
+              return scanCached(location);
+            } finally {
+              scanAllocated.addAndGet(getThreadAllocatedBytes() - start);
+            }
+          }
+        }));
+      }
+      List<Scan> result = new ArrayList<>(locations.size());
+      for(Future<Scan> future: futures) {
+        result.add(future.get());
+      }
+      return result;
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IOException("Interrupted while scanning", e);
+    } catch (ExecutionException e) {
+      if (e.getCause() instanceof IOException) {
+        throw (IOException) e.getCause();
+      } else if (e.getCause() instanceof RuntimeException) {
+        throw (RuntimeException) e.getCause();
+      }
+      throw new IOException("Failed to scan", e.getCause());
+    } finally {
+      pool.shutdownNow();
+    }
+  }
+}
@@ -0,0 +1,328 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.orc.dependency;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * A compact, immutable snapshot of an analyzed class graph. The classes are
+ * numbered in name order and the edges of each class are stored as a sorted
+ * array of target ids, so that two graphs can be compared with linear merges.
+ */
+class DependencyGraph {
+  private static final int MAGIC = 0x44455047; // "DEPG"
+  private static final int VERSION = 2;
+  // the first version didn't record the weights of the classes
+  private static final int UNWEIGHTED_VERSION = 1;
+
+  final String[] names;
+  final String[] jarNames;
+  final int[] jar;
+  final int[] depth;
+  final int[] dependsCount;
+  // the weights of each class and their totals over its transitive
+  // dependencies, as sizes[Weight.ordinal()][class]
+  final int[][] sizes;
+  final long[][] dependsSizes;
+  // the edges of class i are edges[offsets[i]] to edges[offsets[i+1]-1]
+  final int[] offsets;
+  final int[] edges;
+
+  DependencyGraph(String[] names, String[] jarNames, int[] jar, int[] depth,
+                  int[] dependsCount, int[][] sizes, long[][] dependsSizes,
+                  int[] offsets, int[] edges) {
+    this.names = names;
+    this.jarNames = jarNames;
+    this.jar = jar;
+    this.depth = depth;
+    this.dependsCount = dependsCount;
+    this.sizes = sizes;
+    this.dependsSizes = dependsSizes;
+    this.offsets = offsets;
+    this.edges = edges;
+  }
+
+  int size() {
+    return names.length;
+  }
+
+  int edgeCount() {
+    return edges.length;
+  }
+
+  /**
+   * Find a class by name.
+   * @return the id of the class or a negative number if it isn't present
+   */
+  int find(String name) {
+    return Arrays.binarySearch(names, name);
+  }
+
+  static DependencyGraph fromProject(ProjectModel model) {
+    Collection<ClassModel> classes = model.getClasses();
+    ClassModel[] sorted = classes.toArray(new ClassModel[classes.size()]);
+    Arrays.sort(sorted, new Comparator<ClassModel>() {
+      @Override
+      public int compare(ClassModel left, ClassModel right) {
+        return left.name.compareTo(right.name);
+      }
+    });
+    int maxId = -1;
+    for(ClassModel cls: sorted) {
+      maxId = Math.max(maxId, cls.id);
+    }
+    int[] newId = new int[maxId + 1];
+    for(int i=0; i < sorted.length; ++i) {
+      newId[sorted[i].id] = i;
+    }
+    List<JarModel> jars = model.getJars();
+    String[] jarNames = new String[jars.size()];
+    Map<JarModel, Integer> jarIds = new HashMap<>(jars.size());
+    for(int j=0; j < jarNames.length; ++j) {
+      jarNames[j] = jars.get(j).toString();
+      jarIds.put(jars.get(j), j);
+    }
+    String[] names = new String[sorted.length];
+    int[] jar = new int[sorted.length];
+    int[] depth = new int[sorted.length];
+    int[] dependsCount = new int[sorted.length];
+    int[][] sizes = new int[Weight.SIZE][sorted.length];
+    long[][] dependsSizes = new long[Weight.SIZE][sorted.length];
+    int[] offsets = new int[sorted.length + 1];
+    int edgeCount = 0;
+    for(ClassModel cls: sorted) {
+      edgeCount += cls.next.size();
+    }
+    int[] edges = new int[edgeCount];
+    int posn = 0;
+    for(int i=0; i < sorted.length; ++i) {
+      ClassModel cls = sorted[i];
+      names[i] = cls.name;
+      Integer jarId = jarIds.get(cls.jar);
+      jar[i] = jarId == null ? -1 : jarId;
+      depth[i] = cls.depth;
+      dependsCount[i] = cls.dependsCount;
+      for(int w=0; w < Weight.SIZE; ++w) {
+        sizes[w][i] = cls.sizes[w];
+        dependsSizes[w][i] = cls.dependsSizes[w];
+      }
+      offsets[i] = posn;
+      int start = posn;
+      for(ClassModel child: cls.next) {
+        edges[posn++] = newId[child.id];
+      }
+      Arrays.sort(edges, start, posn);
+      posn = removeDuplicates(edges, start, posn);
+    }
+    offsets[sorted.length] = posn;
+    return new DependencyGraph(names, jarNames, jar, depth, dependsCount,
+        sizes, dependsSizes, offsets, Arrays.copyOf(edges, posn));
+  }
+
+  /**
+   * Get the total weight of the classes that a class depends on.
+   */
+  long getDependsWeight(Weight weight, int cls) {
+    return dependsSizes[weight.ordinal()][cls];
+  }
+
+  /**
+   * Remove the duplicates from a sorted range.
+   * @return the new end of the range
+   */
+  private static int removeDuplicates(int[] values, int start, int end) {
+    if (end - start < 2) {
+      return end;
+    }
+    int out = start + 1;
+    for(int i=start + 1; i < end; ++i) {
+      if (values[i] != values[out - 1]) {
+        values[out++] = values[i];
+      }
+    }
+    return out;
+  }
+
+  private static void writeVInt(DataOutputStream out,
+                                int value) throws IOException {
+    while ((value & ~0x7f) != 0) {
+      out.writeByte((value & 0x7f) | 0x80);
+      value >>>= 7;
+    }
+    out.writeByte(value);
+  }
+
+  private static void writeVLong(DataOutputStream out,
+                                 long value) throws IOException {
+    while ((value & ~0x7fL) != 0) {
+      out.writeByte((int) (value & 0x7f) | 0x80);
+      value >>>= 7;
+    }
+    out.writeByte((int) value);
+  }
+
+  private static long readVLong(DataInputStream in) throws IOException {
+    long result = 0;
+    int shift = 0;
+    int b;
+    do {
+      b = in.readUnsignedByte();
+      result |= (long) (b & 0x7f) << shift;
+      shift += 7;
+    } while ((b & 0x80) != 0);
+    return result;
+  }
+
+  private static int readVInt(DataInputStream in) throws IOException {
+    int result = 0;
+    int shift = 0;
+    int b;
+    do {
+      b = in.readUnsignedByte();
+      result |= (b & 0x7f) << shift;
+      shift += 7;
+    } while ((b & 0x80) != 0);
+    return result;
+  }
+
+  /**
+   * Save the graph. The depths are stored shifted by one, so that
+   * unreachable classes are stored as 0. The class counts are implied, so
+   * only the other weights are stored.
+   */
+  void write(String path) throws IOException {
+    try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+        new GZIPOutputStream(new FileOutputStream(path), 64 * 1024)))) {
+      out.writeInt(MAGIC);
+      out.writeInt(VERSION);
+      writeVInt(out, jarNames.length);
+      for(String name: jarNames) {
+        out.writeUTF(name);
+      }
+      writeVInt(out, names.length);
+      for(int i=0; i < names.length; ++i) {
+        out.writeUTF(names[i]);
+        writeVInt(out, jar[i] + 1);
+        writeVInt(out, depth[i] == Integer.MAX_VALUE ? 0 : depth[i] + 1);
+        writeVInt(out, dependsCount[i]);
+        for(int w=Weight.BYTES.ordinal(); w < Weight.SIZE; ++w) {
+          writeVInt(out, sizes[w][i]);
+          writeVLong(out, dependsSizes[w][i]);
+        }
+        writeVInt(out, offsets[i + 1] - offsets[i]);
+        int last = 0;
+        for(int e=offsets[i]; e < offsets[i + 1]; ++e) {
+          writeVInt(out, edges[e] - last);
+          last = edges[e];
+        }
+      }
+    }
+  }
+
+  static DependencyGraph read(String path) throws IOException {
+    try (DataInputStream in = new DataInputStream(new BufferedInputStream(
+        new GZIPInputStream(new FileInputStream(path), 64 * 1024)))) {
+      if (in.readInt() != MAGIC) {
+        throw new IOException(path + " is not a saved dependency graph");
+      }
+      int version = in.readInt();
+      if (version != VERSION && version != UNWEIGHTED_VERSION) {
+        throw new IOException(path + " is a saved dependency graph version " +
+            version);
+      }
+      String[] jarNames = new String[readVInt(in)];
+      for(int j=0; j < jarNames.length; ++j) {
+        jarNames[j] = in.readUTF();
+      }
+      int count = readVInt(in);
+      String[] names = new String[count];
+      int[] jar = new int[count];
+      int[] depth = new int[count];
+      int[] dependsCount = new int[count];
+      int[][] sizes = new int[Weight.SIZE][count];
+      long[][] dependsSizes = new long[Weight.SIZE][count];
+      Arrays.fill(sizes[Weight.COUNT.ordinal()], 1);
+      int[] offsets = new int[count + 1];
+      int[] edges = new int[Math.max(16, count * 4)];
+      int posn = 0;
+      for(int i=0; i < count; ++i) {
+        names[i] = in.readUTF();
+        jar[i] = readVInt(in) - 1;
+        int d = readVInt(in);
+        depth[i] = d == 0 ? Integer.MAX_VALUE : d - 1;
+        dependsCount[i] = readVInt(in);
+        dependsSizes[Weight.COUNT.ordinal()][i] = dependsCount[i];
+        if (version != UNWEIGHTED_VERSION) {
+          for(int w=Weight.BYTES.ordinal(); w < Weight.SIZE; ++w) {
+            sizes[w][i] = readVInt(in);
+            dependsSizes[w][i] = readVLong(in);
+          }
+        }
+        int degree = readVInt(in);
+        offsets[i] = posn;
+        if (posn + degree > edges.length) {
+          edges = Arrays.copyOf(edges, Math.max(edges.length * 2,
+              posn + degree));
+        }
+        int last = 0;
+        for(int e=0; e < degree; ++e) {
+          last += readVInt(in);
+          edges[posn++] = last;
+        }
+      }
+      offsets[count] = posn;
+      return new DependencyGraph(names, jarNames, jar, depth, dependsCount,
+          sizes, dependsSizes, offsets, Arrays.copyOf(edges, posn));
+    }
+  }
+
+  /**
+   * Load a graph either by analyzing the jars in a tgf file or classpath or
+   * by reading a previously saved graph.
+   */
+  static DependencyGraph load(String path) throws IOException {
+    return load(path, true);
+  }
+
+  /**
+   * Load a graph, optionally skipping the exact transitive dependency sets
+   * when analyzing a tgf file.
+   */
+  static DependencyGraph load(String path,
+                              boolean computeClosures) throws IOException {
+    if (path.endsWith(".tgf") || ClassPathScanner.isClassPath(path)) {
+      return fromProject(ProjectModel.load(path, computeClosures));
+    }
+    return read(path);
+  }
+}
@@ -0,0 +1,359 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.orc.dependency;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
+
+/**
+ * Checks the current dependencies against a baseline graph saved with
+ * GraphDiff -save and fails if too many classes became reachable or if the
+ * closure of a root class grew too much. It is meant to run on every
+ * commit, so the jar scans can be cached and the closures are only
+ * recomputed for the roots that can reach a class whose dependencies
+ * changed. Each failure is explained with a path from a root.
+ *
+ * Usage: DependencyGuard [-allow prefix]... [-max-new N] [-root prefix]...
+ *            [-max-growth N] [-cache dir] baseline.graph (graph.tgf|classpath)
+ */
+public class DependencyGuard {
+  // the number of paths to print for each failure
+  private static final int EXPLAIN_LIMIT = 10;
+
+  // the classes that are allowed to become reachable
+  private final List<String> allow = new ArrayList<>();
+  // the roots whose closures are checked, or all of them if empty
+  private final List<String> roots = new ArrayList<>();
+  private int maxNew = 0;
+  private int maxGrowth = 0;
+
+  private DependencyGraph baseline;
+  private DependencyGraph current;
+  // the id of each current class in the baseline or -1
+  private int[] toBaseline;
+  private int failures = 0;
+
+  /**
+   * Map the current classes to the baseline with a merge, since both are
+   * sorted by name.
+   */
+  private void mapToBaseline() {
+    toBaseline = new int[current.size()];
+    int b = 0;
+    for(int v=0; v < current.size(); ++v) {
+      while (b < baseline.size() &&
+          baseline.names[b].compareTo(current.names[v]) < 0) {
+        b += 1;
+      }
+      toBaseline[v] = b < baseline.size() &&
+          baseline.names[b].equals(current.names[v]) ? b : -1;
+    }
+  }
+
+  private boolean isBaselineEdge(int source, int target) {
+    int b = toBaseline[source];
+    int bt = toBaseline[target];
+    return b >= 0 && bt >= 0 && Arrays.binarySearch(baseline.edges,
+        baseline.offsets[b], baseline.offsets[b + 1], bt) >= 0;
+  }
+
+  private boolean isBaselineReachable(int v) {
+    return toBaseline[v] >= 0 &&
+        baseline.depth[toBaseline[v]] != Integer.MAX_VALUE;
+  }
+
+  /**
+   * Does the class have different dependencies than in the baseline?
+   */
+  private boolean isChanged(int v) {
+    int b = toBaseline[v];
+    if (b < 0 || baseline.offsets[b + 1] - baseline.offsets[b] !=
+        current.offsets[v + 1] - current.offsets[v]) {
+      return true;
+    }
+    for(int e=current.offsets[v]; e < current.offsets[v + 1]; ++e) {
+      if (!isBaselineEdge(v, current.edges[e])) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /**
+   * Breadth first search from the given classes.
+   * @param graph the graph to search
+   * @param starts the classes to start from
+   * @param parent set to the class that each class was reached from, -1 for
+   *               the starts, and -2 if it wasn't reached
+   * @return the number of classes reached, not counting the starts unless
+   *         they are reached again through a cycle
+   */
+  static int search(DependencyGraph graph, int[] starts, int[] parent) {
+    Arrays.fill(parent, -2);
+    int[] queue = new int[graph.size()];
+    int head = 0;
+    int tail = 0;
+    BitSet seen = new BitSet(graph.size());
+    for(int v: starts) {
+      if (parent[v] == -2) {
+        parent[v] = -1;
+        queue[tail++] = v;
+      }
+    }
+    while (head < tail) {
+      int v = queue[head++];
+      for(int e=graph.offsets[v]; e < graph.offsets[v + 1]; ++e) {
+        int w = graph.edges[e];
+        seen.set(w);
+        if (parent[w] == -2) {
+          parent[w] = v;
+          queue[tail++] = w;
+        }
+      }
+    }
+    return seen.cardinality();
+  }
+
+  /**
+   * Print the path from a root to a class, marking the edges that aren't
+   * in the baseline.
+   */
+  private void explain(int[] parent, int target) {
+    List<Integer> path = new ArrayList<>();
+    for(int v=target; v >= 0; v=parent[v]) {
+      path.add(v);
+    }
+    int root = path.get(path.size() - 1);
+    System.out.println("      " + current.names[root]);
+    for(int i=path.size() - 2; i >= 0; --i) {
+      int source = path.get(i + 1);
+      int v = path.get(i);
+      System.out.println("        -> " + current.names[v] +
+          (isBaselineEdge(source, v) ? "" : " (new edge)"));
+    }
+  }
+
+  /**
+   * Check that no more than the allowed number of classes became reachable.
+   * @return the class that each class was reached from
+   */
+  private int[] checkReachable(int[] rootIds) {
+    int[] parent = new int[current.size()];
+    search(current, rootIds, parent);
+    int reachable = 0;
+    int allowed = 0;
+    List<Integer> added = new ArrayList<>();
+    for(int v=0; v < current.size(); ++v) {
+      if (parent[v] != -2) {
+        reachable += 1;
+        if (!isBaselineReachable(v)) {
+          if (Prefixes.matches(allow, current.names[v])) {
+            allowed += 1;
+          } else {
+            added.add(v);
+          }
+        }
+      }
+    }
+    int before = 0;
+    for(int d: baseline.depth) {
+      if (d != Integer.MAX_VALUE) {
+        before += 1;
+      }
+    }
+    System.out.println("Reachable: " + before + " -> " + reachable +
+        ", newly reachable: " + added.size() + " (allowed " + allowed +
+        ", limit " + maxNew + ")");
+    if (added.size() > maxNew) {
+      failures += 1;
+      System.out.println("  FAILED: " + added.size() +
+          " classes are newly reachable.");
+      for(int i=0; i < added.size() && i < EXPLAIN_LIMIT; ++i) {
+        System.out.println("    " + current.names[added.get(i)] + ":");
+        explain(parent, added.get(i));
+      }
+      if (added.size() > EXPLAIN_LIMIT) {
+        System.out.println("    ... and " + (added.size() - EXPLAIN_LIMIT) +
+            " more");
+      }
+    }
+    return parent;
+  }
+
+  /**
+   * Find the roots that can reach a class whose dependencies changed, which
+   * are the only ones whose closures may differ from the baseline.
+   */
+  private BitSet getAffected(int[] reached) {
+    int size = current.size();
+    int[] reverseOffsets = new int[size + 1];
+    for(int e=0; e < current.edges.length; ++e) {
+      reverseOffsets[current.edges[e] + 1] += 1;
+    }
+    for(int v=0; v < size; ++v) {
+      reverseOffsets[v + 1] += reverseOffsets[v];
+    }
+    int[] reverse = new int[current.edges.length];
+    int[] posn = Arrays.copyOf(reverseOffsets, size);
+    for(int v=0; v < size; ++v) {
+      for(int e=current.offsets[v]; e < current.offsets[v + 1]; ++e) {
+        reverse[posn[current.edges[e]]++] = v;
+      }
+    }
+    BitSet affected = new BitSet(size);
+    int[] queue = new int[size];
+    int tail = 0;
+    for(int v=0; v < size; ++v) {
+      if (reached[v] != -2 && isChanged(v)) {
+        affected.set(v);
+        queue[tail++] = v;
+      }
+    }
+    int head = 0;
+    while (head < tail) {
+      int v = queue[head++];
+      for(int e=reverseOffsets[v]; e < reverseOffsets[v + 1]; ++e) {
+        int u = reverse[e];
+        if (reached[u] != -2 && !affected.get(u)) {
+          affected.set(u);
+          queue[tail++] = u;
+        }
+      }
+    }
+    return affected;
+  }
+
+  /**
+   * Check that the closures of the roots didn't grow more than allowed.
+   */
+  private void checkClosures(int[] rootIds, int[] reached) {
+    BitSet affected = getAffected(reached);
+    int[] parent = new int[current.size()];
+    int[] baselineParent = new int[baseline.size()];
+    int checked = 0;
+    int total = 0;
+    for(int root: rootIds) {
+      if (!roots.isEmpty() && !Prefixes.matches(roots,
+          current.names[root])) {
+        continue;
+      }
+      total += 1;
+      // new roots are covered by the reachability check
+      int b = toBaseline[root];
+      if (!affected.get(root) || b < 0) {
+        continue;
+      }
+      checked += 1;
+      int count = search(current, new int[]{root}, parent);
+      int allowed = 0;
+      for(int v=0; v < current.size(); ++v) {
+        if (parent[v] >= 0 && !isBaselineReachable(v) &&
+            Prefixes.matches(allow, current.names[v])) {
+          allowed += 1;
+        }
+      }
+      int growth = count - allowed - baseline.dependsCount[b];
+      if (growth > maxGrowth) {
+        failures += 1;
+        System.out.println("  FAILED: the closure of " + current.names[root] +
+            " grew from " + baseline.dependsCount[b] + " to " + count +
+            " classes (limit " + maxGrowth + ")");
+        search(baseline, new int[]{b}, baselineParent);
+        int shown = 0;
+        for(int v=0; v < current.size() && shown < EXPLAIN_LIMIT; ++v) {
+          if (parent[v] >= 0 && (toBaseline[v] < 0 ||
+              baselineParent[toBaseline[v]] == -2) &&
+              !Prefixes.matches(allow, current.names[v])) {
+            System.out.println("    " + current.names[v] + ":");
+            explain(parent, v);
+            shown += 1;
+          }
+        }
+      }
+    }
+    System.out.println("Checked the closures of " + checked + " of " + total +
+        " roots that can reach " + affected.cardinality() +
+        " changed classes and their users.");
+  }
+
+  /**
+   * Check the current graph against the baseline.
+   * @return true if all of the checks passed
+   */
+  boolean check(DependencyGraph baseline, DependencyGraph current) {
+    this.baseline = baseline;
+    this.current = current;
+    failures = 0;
+    mapToBaseline();
+    int[] rootIds = DominatorReport.getRoots(current);
+    int[] reached = checkReachable(rootIds);
+    checkClosures(rootIds, reached);
+    return failures == 0;
+  }
+
+  public static void main(String[] args) throws IOException {
+    DependencyGuard guard = new DependencyGuard();
+    int arg = 0;
+    while (arg < args.length && args[arg].startsWith("-")) {
+      switch (args[arg]) {
+        case "-allow":
+          guard.allow.add(args[++arg]);
+          break;
+        case "-max-new":
+          guard.maxNew = Integer.parseInt(args[++arg]);
+          break;
+        case "-root":
+          guard.roots.add(args[++arg]);
+          break;
+        case "-max-growth":
+          guard.maxGrowth = Integer.parseInt(args[++arg]);
+          break;
+        case "-cache":
+          ClassPathScanner.cacheDir = new File(args[++arg]);
+          ClassPathScanner.cacheDir.mkdirs();
+          break;
+        default:
+          throw new IllegalArgumentException("Unknown option " + args[arg]);
+      }
+      arg += 1;
+    }
+    if (args.length - arg != 2) {
+      System.err.println("Usage: DependencyGuard [-allow prefix]..." +
+          " [-max-new N] [-root prefix]... [-max-growth N] [-cache dir]" +
+          " baseline.graph (graph.tgf|classpath)");
+      System.exit(2);
+    }
+    long start = System.nanoTime();
+    DependencyGraph baseline = DependencyGraph.read(args[arg]);
+    DependencyGraph current = DependencyGraph.load(args[arg + 1], false);
+    long loaded = System.nanoTime();
+    boolean passed = guard.check(baseline, current);
+    long end = System.nanoTime();
+    System.out.println("Loaded in " + (loaded - start) / 1000000 +
+        " ms and checked in " + (end - loaded) / 1000000 + " ms.");
+    System.out.println(passed ? "PASSED" : "FAILED with " + guard.failures +
+        " problems");
+    if (!passed) {
+      System.exit(1);
+    }
+  }
+}
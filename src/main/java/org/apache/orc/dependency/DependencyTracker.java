@@ -22,24 +22,27 @@ import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.BitSet;
 import java.util.Comparator;
-import java.util.Enumeration;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
+import java.util.Locale;
 import java.util.Map;
 import java.util.Set;
-import java.util.zip.ZipEntry;
-import java.util.zip.ZipFile;
-
-import org.objectweb.asm.ClassReader;
 
 /**
  * DependencyTracker
+ *
+ * Usage: DependencyTracker [-sort count|bytes|methods|constants]
+ *            classpath [rootPrefix]
  */
 public class DependencyTracker {
 
+  static String rootPrefix = "org.apache.hadoop.hive.metastore.";
+  // what the classes at each depth are ranked by
+  static Weight sortBy = Weight.COUNT;
+
   static boolean isRoot(String name) {
-    return name.startsWith("org.apache.hadoop.hive.metastore.");
+    return name.startsWith(rootPrefix);
   }
 
   static boolean isSystem(String name) {
@@ -53,6 +56,9 @@ public class DependencyTracker {
     int depth = Integer.MAX_VALUE;
     BitSet depends = null;
     int dependsCount = 0;
+    // indexed by Weight.ordinal()
+    int[] sizes = Weight.getSizes(null);
+    long[] dependsSizes = new long[Weight.SIZE];
     List<ClassInfo> prev = new ArrayList<ClassInfo>();
     List<ClassInfo> next = new ArrayList<ClassInfo>();
 
@@ -61,8 +67,18 @@ public class DependencyTracker {
       this.id = id;
     }
 
+    long getWeight() {
+      return dependsSizes[sortBy.ordinal()];
+    }
+
     public String toString() {
-      return name + " (" + dependsCount + ", " + depth + ")";
+      if (sortBy == Weight.COUNT) {
+        return name + " (" + dependsCount + ", " + depth + ")";
+      }
+      return name + " (" + dependsCount + ", " + depth + ", " +
+          dependsSizes[Weight.BYTES.ordinal()] + " bytes, " +
+          dependsSizes[Weight.METHODS.ordinal()] + " methods, " +
+          dependsSizes[Weight.CONSTANTS.ordinal()] + " constants)";
     }
   }
 
@@ -72,9 +88,9 @@ public class DependencyTracker {
         return -1;
       } else if (left.depth > right.depth) {
         return 1;
-      } else if (left.dependsCount > right.dependsCount) {
+      } else if (left.getWeight() > right.getWeight()) {
         return -1;
-      } else if (left.dependsCount < right.dependsCount) {
+      } else if (left.getWeight() < right.getWeight()) {
         return 1;
       } else {
         return left.name.compareTo(right.name);
@@ -124,15 +140,26 @@ public class DependencyTracker {
   }
 
   public static void main(final String[] args) throws IOException {
+    int arg = 0;
+    if (args.length > 2 && "-sort".equals(args[0])) {
+      sortBy = Weight.valueOf(args[1].toUpperCase(Locale.ROOT));
+      arg = 2;
+    }
+    if (args.length > arg + 1) {
+      rootPrefix = args[arg + 1];
+    }
+    info.clear();
     DependencyVisitor v = new DependencyVisitor();
 
-    ZipFile f = new ZipFile(args[0]);
-    Enumeration<? extends ZipEntry> en = f.entries();
-    while (en.hasMoreElements()) {
-      ZipEntry e = en.nextElement();
-      String name = e.getName();
-      if (name.endsWith(".class")) {
-        new ClassReader(f.getInputStream(e)).accept(v, 0);
+    // the first jar or directory on the classpath that defines a class wins
+    Set<String> defined = new HashSet<String>();
+    for(ClassPathScanner.Scan scan:
+        ClassPathScanner.scanAll(ClassPathScanner.split(args[arg]))) {
+      for(String cls: scan.classes) {
+        if (defined.add(cls)) {
+          v.addDependencies(cls, scan.dependencies.getDependencies(cls));
+          v.setSize(cls, scan.dependencies.getSize(cls));
+        }
       }
     }
     System.out.println("Finished visiting " + v.getClasses().size() +
@@ -150,6 +177,9 @@ public class DependencyTracker {
         recursivelySetDepth(myInfo, 0);
       }
     }
+    for(ClassInfo cls: info.values()) {
+      cls.sizes = Weight.getSizes(v.getSize(cls.name));
+    }
     v = null;
 
     int classCount = info.size();
@@ -189,6 +219,16 @@ public class DependencyTracker {
       next = recheck.nextSetBit(0);
     }
 
+    // add up the weights of the classes in each transitive depends set
+    for(ClassInfo cls: universe) {
+      BitSet depends = cls.depends;
+      for(int i=depends.nextSetBit(0); i >= 0; i=depends.nextSetBit(i + 1)) {
+        for(int w=0; w < Weight.SIZE; ++w) {
+          cls.dependsSizes[w] += universe[i].sizes[w];
+        }
+      }
+    }
+
     // sort the universe into the weight order
     ClassInfoComparator compare = new ClassInfoComparator();
     Arrays.sort(universe, compare);
@@ -19,6 +19,7 @@ package org.apache.orc.dependency;
 
 import org.objectweb.asm.ClassReader;
 
+import java.io.File;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Arrays;
@@ -26,34 +27,118 @@ import java.util.BitSet;
 import java.util.Comparator;
 import java.util.Enumeration;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.zip.ZipEntry;
 import java.util.zip.ZipFile;
 
 /**
  * DependencyTracker
+ *
+ * Usage: DependencyVacuum [-indirect] (graph.tgf|classpath)
+ *        DependencyVacuum -external [-budget MB] [-tmp dir] [-cache dir]
+ *            [-closures k] [-precision p] (graph.tgf|classpath)
  */
 public class DependencyVacuum {
 
+  static void printUnused(JarModel jar, int unusedClasses, int usedSingle,
+                          int usedDuplicated) {
+    if (usedSingle == 0 && usedDuplicated == 0) {
+      System.out.println(jar + " used: " + usedSingle + ", used duplicate: " +
+          usedDuplicated + ", unused: " + unusedClasses);
+    }
+  }
+
+  /**
+   * Find the unused jars while keeping the edges on disk.
+   */
+  static void externalMain(String[] args) throws IOException {
+    long budget = 64L * 1024 * 1024;
+    File tmpDir = new File(System.getProperty("java.io.tmpdir"));
+    int closures = 0;
+    int precision = 10;
+    int arg = 1;
+    while (arg < args.length - 1) {
+      if ("-budget".equals(args[arg])) {
+        budget = Long.parseLong(args[arg + 1]) * 1024 * 1024;
+      } else if ("-tmp".equals(args[arg])) {
+        tmpDir = new File(args[arg + 1]);
+      } else if ("-cache".equals(args[arg])) {
+        ClassPathScanner.cacheDir = new File(args[arg + 1]);
+        ClassPathScanner.cacheDir.mkdirs();
+      } else if ("-closures".equals(args[arg])) {
+        closures = Integer.parseInt(args[arg + 1]);
+      } else if ("-precision".equals(args[arg])) {
+        precision = Integer.parseInt(args[arg + 1]);
+      } else {
+        throw new IllegalArgumentException("Unknown option " + args[arg]);
+      }
+      arg += 2;
+    }
+    try (ExternalProjectModel model =
+             ExternalProjectModel.load(args[arg], tmpDir, budget)) {
+      System.out.println("Reachable " + model.getReachableCount() + " of " +
+          model.getClassCount() + " classes with a maximum depth of " +
+          model.getMaxDepth() + ".");
+      int[][] usage = model.getJarUsage();
+      List<JarModel> jars = model.getJars();
+      for(int j=0; j < jars.size(); ++j) {
+        printUnused(jars.get(j), usage[j][0], usage[j][1], usage[j][2]);
+      }
+      if (closures > 0) {
+        long start = System.nanoTime();
+        model.estimateClosures(precision);
+        int[] largest = model.getLargestClosures(closures);
+        long end = System.nanoTime();
+        System.out.println();
+        System.out.println("Estimated closures in " + (end - start) / 1000000 +
+            " ms.");
+        for(int cls: largest) {
+          System.out.println("  Class " + model.getName(cls) + " (~" +
+              model.getClosureSize(cls) + ", " + model.getDepth(cls) + ")");
+        }
+      }
+    }
+  }
+
   public static void main(final String[] args) throws IOException {
-    ProjectModel model = new ProjectModel(args[0]);
+    if (args.length > 0 && "-external".equals(args[0])) {
+      externalMain(args);
+      return;
+    }
+    boolean indirect = args.length > 1 && "-indirect".equals(args[0]);
+    ProjectModel model = ProjectModel.load(args[args.length - 1], true,
+        indirect);
+    // the unused classes that a used class loads by name
+    Set<ClassModel> named = new HashSet<>();
+    for(ClassModel cls: model.getClasses()) {
+      if (cls.depth != Integer.MAX_VALUE) {
+        named.addAll(cls.indirect);
+      }
+    }
     for(JarModel jar: model.getJars()) {
       int unusedClasses = 0;
       int usedSingle = 0;
       int usedDuplicated = 0;
+      int usedIndirectly = 0;
       for(ClassModel cls: jar.classes) {
         if (cls.depth == Integer.MAX_VALUE) {
           unusedClasses += 1;
+          if (named.contains(cls)) {
+            usedIndirectly += 1;
+          }
         } else if (cls.containingJars == 1) {
           usedSingle += 1;
         } else {
           usedDuplicated += 1;
         }
       }
-      if (usedSingle == 0 && usedDuplicated == 0) {
-        System.out.println(jar + " used: " + usedSingle + ", used duplicate: " +
-            usedDuplicated + ", unused: " + unusedClasses);
+      printUnused(jar, unusedClasses, usedSingle, usedDuplicated);
+      if (usedSingle == 0 && usedDuplicated == 0 && usedIndirectly > 0) {
+        System.out.println("  but " + usedIndirectly + " classes are loaded" +
+            " by name through service files or strings, see -indirect");
       }
     }
   }
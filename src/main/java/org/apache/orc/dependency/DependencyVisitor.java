@@ -38,11 +38,26 @@ import org.objectweb.asm.signature.SignatureVisitor;
  * DependencyVisitor
  */
 public class DependencyVisitor extends ClassVisitor {
+
+  /**
+   * The size of a class file, which is what the class costs to ship and
+   * load.
+   */
+  public static class ClassSize {
+    public int bytes;
+    public int methods;
+    public int constants;
+  }
+
   private Set<String> classes = new HashSet<>();
   private Map<String, Set<String> > classGraph =
     new HashMap<String, Set<String> >();
+  // the string constants of each class that look like class names
+  private Map<String, Set<String>> classNameStrings = new HashMap<>();
+  private Map<String, ClassSize> sizes = new HashMap<>();
   private String src = null;
   private Set<String> current = null;
+  private ClassSize currentSize = null;
 
   public Set<String> getClasses() {
     return classes;
@@ -56,6 +71,89 @@ public class DependencyVisitor extends ClassVisitor {
     return result;
   }
 
+  /**
+   * Get the size of a visited class. The visitor counts the methods and
+   * the reader of the class file fills in the rest.
+   * @return the size or null if the class wasn't visited
+   */
+  public ClassSize getSize(String clsName) {
+    return sizes.get(clsName);
+  }
+
+  public void setSize(String clsName, ClassSize size) {
+    sizes.put(clsName, size);
+  }
+
+  /**
+   * Get the string constants of a class that look like class names, which
+   * it may load by reflection. They aren't included in the dependencies.
+   */
+  public Set<String> getClassNameStrings(String clsName) {
+    Set<String> result = classNameStrings.get(clsName);
+    if (result == null) {
+      return new HashSet<String>();
+    }
+    return result;
+  }
+
+  /**
+   * Add the class name strings of a class that was visited by another
+   * visitor.
+   */
+  public void addClassNameStrings(String clsName, Set<String> names) {
+    if (!names.isEmpty()) {
+      Set<String> result = classNameStrings.get(clsName);
+      if (result == null) {
+        classNameStrings.put(clsName, new HashSet<String>(names));
+      } else {
+        result.addAll(names);
+      }
+    }
+  }
+
+  /**
+   * Does a string constant look like a fully qualified class name, such as
+   * the argument to Class.forName?
+   */
+  static boolean isClassName(String value) {
+    if (value.isEmpty() || value.length() > 1024) {
+      return false;
+    }
+    boolean start = true;
+    boolean dotted = false;
+    for(int i=0; i < value.length(); ++i) {
+      char ch = value.charAt(i);
+      if (start) {
+        if (!Character.isJavaIdentifierStart(ch)) {
+          return false;
+        }
+        start = false;
+      } else if (ch == '.') {
+        start = true;
+        dotted = true;
+      } else if (!Character.isJavaIdentifierPart(ch)) {
+        return false;
+      }
+    }
+    return dotted && !start;
+  }
+
+  /**
+   * Add the dependencies of a class that was visited by another visitor.
+   * @param clsName the class that has the dependencies
+   * @param dependencies the classes that it depends on
+   */
+  public void addDependencies(String clsName, Set<String> dependencies) {
+    classes.add(clsName);
+    classes.addAll(dependencies);
+    Set<String> result = classGraph.get(clsName);
+    if (result == null) {
+      classGraph.put(clsName, new HashSet<String>(dependencies));
+    } else {
+      result.addAll(dependencies);
+    }
+  }
+
   public DependencyVisitor() {
     super(Opcodes.ASM5);
   }
@@ -73,6 +171,8 @@ public class DependencyVisitor extends ClassVisitor {
         current = new HashSet<String>();
         classGraph.put(src, current);
       }
+      currentSize = new ClassSize();
+      sizes.put(src, currentSize);
       if (signature == null) {
         if (superName != null) {
           addInternalName(superName);
@@ -114,6 +214,7 @@ public class DependencyVisitor extends ClassVisitor {
     @Override
     public MethodVisitor visitMethod(final int access, final String name,
             final String desc, final String signature, final String[] exceptions) {
+        currentSize.methods += 1;
         if (signature == null) {
             addMethodDesc(desc);
         } else {
@@ -240,7 +341,11 @@ public class DependencyVisitor extends ClassVisitor {
 
         @Override
         public void visitLdcInsn(final Object cst) {
-            addConstant(cst);
+            if (cst instanceof String) {
+                addClassNameString((String) cst);
+            } else {
+                addConstant(cst);
+            }
         }
 
         @Override
@@ -317,6 +422,17 @@ public class DependencyVisitor extends ClassVisitor {
       }
     }
 
+    private void addClassNameString(String value) {
+      if (isClassName(value) && !src.equals(value)) {
+        Set<String> result = classNameStrings.get(src);
+        if (result == null) {
+          result = new HashSet<>();
+          classNameStrings.put(src, result);
+        }
+        result.add(value);
+      }
+    }
+
     void addInternalName(final String name) {
         addType(Type.getObjectType(name));
     }
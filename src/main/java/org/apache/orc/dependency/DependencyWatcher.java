@@ -0,0 +1,258 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.orc.dependency;
+
+import org.objectweb.asm.ClassReader;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.FileSystems;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Analyzes a classpath and then watches its class directories, so that
+ * when classes are recompiled only their files are parsed again and the
+ * depths are updated outward from the changed classes. Each batch of
+ * changes reports the edges that changed and the classes that became
+ * reachable or unreachable from the roots.
+ *
+ * Usage: DependencyWatcher [-indirect] classpath
+ */
+public class DependencyWatcher {
+  // wait this long after a change for the rest of a compile to land
+  private static final long SETTLE_MILLIS = 200;
+
+  private final ProjectModel model;
+  private final WatchService watcher;
+  // the directory that was registered for each key
+  private final Map<WatchKey, Path> keys = new HashMap<>();
+  // the classpath directory that each watched directory is under
+  private final Map<Path, Path> roots = new HashMap<>();
+  private final Map<Path, JarModel> jars = new HashMap<>();
+  private int reachable = 0;
+
+  DependencyWatcher(ProjectModel model) throws IOException {
+    this.model = model;
+    for(ClassModel cls: model.getClasses()) {
+      if (cls.depth != Integer.MAX_VALUE) {
+        reachable += 1;
+      }
+    }
+    watcher = FileSystems.getDefault().newWatchService();
+    for(JarModel jar: model.getJars()) {
+      Path root = FileSystems.getDefault().getPath(jar.getJarLocation())
+          .toAbsolutePath();
+      if (Files.isDirectory(root)) {
+        jars.put(root, jar);
+        register(root, root);
+      }
+    }
+  }
+
+  private void register(final Path root, Path directory) throws IOException {
+    Files.walkFileTree(directory, new SimpleFileVisitor<Path>() {
+      @Override
+      public FileVisitResult preVisitDirectory(Path dir,
+          BasicFileAttributes attrs) throws IOException {
+        WatchKey key = dir.register(watcher,
+            StandardWatchEventKinds.ENTRY_CREATE,
+            StandardWatchEventKinds.ENTRY_MODIFY,
+            StandardWatchEventKinds.ENTRY_DELETE);
+        keys.put(key, dir);
+        roots.put(dir, root);
+        return FileVisitResult.CONTINUE;
+      }
+    });
+  }
+
+  int getWatchedCount() {
+    return keys.size();
+  }
+
+  int getReachableCount() {
+    return reachable;
+  }
+
+  /**
+   * Collect the class files that changed, waiting for the changes to
+   * settle before returning.
+   * @return the changed files mapped to their classpath directory
+   */
+  Map<Path, Path> waitForChanges() throws IOException, InterruptedException {
+    Map<Path, Path> changed = new TreeMap<>();
+    WatchKey key = watcher.take();
+    while (key != null) {
+      Path dir = keys.get(key);
+      for(WatchEvent<?> event: key.pollEvents()) {
+        if (event.kind() == StandardWatchEventKinds.OVERFLOW || dir == null) {
+          continue;
+        }
+        Path file = dir.resolve((Path) event.context());
+        Path root = roots.get(dir);
+        if (event.kind() == StandardWatchEventKinds.ENTRY_CREATE &&
+            Files.isDirectory(file)) {
+          register(root, file);
+          // pick up the files that were written before we were watching
+          List<Path> files = new ArrayList<>();
+          ClassPathScanner.collectClassFiles(file, files);
+          for(Path inner: files) {
+            changed.put(inner, root);
+          }
+        } else if (file.toString().endsWith(".class")) {
+          changed.put(file, root);
+        }
+      }
+      if (!key.reset()) {
+        keys.remove(key);
+      }
+      key = watcher.poll(SETTLE_MILLIS, TimeUnit.MILLISECONDS);
+    }
+    return changed;
+  }
+
+  private static Set<String> getNames(List<ClassModel> classes) {
+    Set<String> result = new HashSet<>();
+    for(ClassModel cls: classes) {
+      result.add(cls.name);
+    }
+    return result;
+  }
+
+  /**
+   * Apply a batch of changed files to the model and report the results.
+   */
+  void update(Map<Path, Path> changed) throws IOException {
+    long start = System.nanoTime();
+    List<String> report = new ArrayList<>();
+    List<ClassModel> updated = new ArrayList<>();
+    List<ClassModel> removed = new ArrayList<>();
+    for(Map.Entry<Path, Path> entry: changed.entrySet()) {
+      Path file = entry.getKey();
+      JarModel jar = jars.get(entry.getValue());
+      String name = ProjectModel.getClassnameFromPath(
+          ClassPathScanner.getRelativePath(entry.getValue(), file));
+      ClassModel old = model.getClassModel(name);
+      Set<String> before = old == null ? new HashSet<String>()
+          : getNames(old.next);
+      if (Files.exists(file)) {
+        DependencyVisitor visitor = new DependencyVisitor();
+        try (InputStream in = Files.newInputStream(file)) {
+          new ClassReader(in).accept(visitor, 0);
+        } catch (IOException | RuntimeException e) {
+          // the compiler may still be writing it
+          report.add("  Can't read " + file + ": " + e);
+          continue;
+        }
+        ClassModel cls = model.updateClass(jar, name,
+            visitor.getDependencies(name), visitor.getClassNameStrings(name));
+        if (cls != null) {
+          updated.add(cls);
+          Set<String> after = getNames(cls.next);
+          StringBuilder line = new StringBuilder();
+          line.append(old == null ? "  Added " : "  Changed ").append(name);
+          for(String child: after) {
+            if (!before.contains(child)) {
+              line.append("\n    + ").append(child);
+            }
+          }
+          for(String child: before) {
+            if (!after.contains(child)) {
+              line.append("\n    - ").append(child);
+            }
+          }
+          report.add(line.toString());
+        }
+      } else {
+        ClassModel cls = model.removeClass(jar, name);
+        if (cls != null) {
+          removed.add(cls);
+          report.add("  Removed " + name);
+        }
+      }
+    }
+    // only the classes whose depth changed can change the reachable set
+    List<String> added = new ArrayList<>();
+    List<String> lost = new ArrayList<>();
+    for(Map.Entry<ClassModel, Integer> entry:
+        model.updateDepths().entrySet()) {
+      boolean before = entry.getValue() != Integer.MAX_VALUE;
+      boolean after = entry.getKey().depth != Integer.MAX_VALUE;
+      if (after && !before) {
+        added.add(entry.getKey().name);
+      } else if (before && !after) {
+        lost.add(entry.getKey().name);
+      }
+    }
+    for(ClassModel cls: removed) {
+      if (cls.depth != Integer.MAX_VALUE) {
+        lost.add(cls.name);
+      }
+    }
+    Collections.sort(added);
+    Collections.sort(lost);
+    reachable += added.size() - lost.size();
+    long end = System.nanoTime();
+    System.out.println();
+    System.out.println("Updated " + changed.size() + " files in " +
+        (end - start) / 1000000 + " ms.");
+    for(String line: report) {
+      System.out.println(line);
+    }
+    for(ClassModel cls: updated) {
+      System.out.println("  Class " + cls.name + " (depth " +
+          GraphDiff.formatDepth(cls.depth) + ")");
+    }
+    System.out.println("Reachable: " + reachable + " (+" + added.size() +
+        ", -" + lost.size() + ")");
+    for(String name: added) {
+      System.out.println("  + " + name);
+    }
+    for(String name: lost) {
+      System.out.println("  - " + name);
+    }
+  }
+
+  public static void main(String[] args) throws Exception {
+    boolean indirect = args.length > 1 && "-indirect".equals(args[0]);
+    ProjectModel model = ProjectModel.load(args[args.length - 1], false,
+        indirect);
+    DependencyWatcher watcher = new DependencyWatcher(model);
+    System.out.println("Reachable: " + watcher.getReachableCount() +
+        ". Watching " + watcher.getWatchedCount() + " directories.");
+    while (true) {
+      watcher.update(watcher.waitForChanges());
+    }
+  }
+}
@@ -0,0 +1,108 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.orc.dependency;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Locale;
+
+/**
+ * Finds the classes that are the only way that the roots reach a part of
+ * the graph. Each class is reported with the number of classes that it
+ * dominates (its retained classes), which are the classes that would no
+ * longer be needed if it was removed. With -sort, the classes are ranked by
+ * the class file bytes, methods or constants that they retain instead.
+ *
+ * Usage: DominatorReport [-sort count|bytes|methods|constants]
+ *            (graph.tgf|saved.graph) [count]
+ */
+public class DominatorReport {
+
+  static int[] getRoots(DependencyGraph graph) {
+    int count = 0;
+    for(int depth: graph.depth) {
+      if (depth == 0) {
+        count += 1;
+      }
+    }
+    int[] result = new int[count];
+    count = 0;
+    for(int i=0; i < graph.size(); ++i) {
+      if (graph.depth[i] == 0) {
+        result[count++] = i;
+      }
+    }
+    return result;
+  }
+
+  public static void main(String[] args) throws IOException {
+    int arg = 0;
+    Weight sortBy = Weight.COUNT;
+    if (args.length > 2 && "-sort".equals(args[0])) {
+      sortBy = Weight.valueOf(args[1].toUpperCase(Locale.ROOT));
+      arg = 2;
+    }
+    final DependencyGraph graph = DependencyGraph.load(args[arg]);
+    int limit = args.length > arg + 1 ? Integer.parseInt(args[arg + 1]) : 100;
+    int[] roots = getRoots(graph);
+    long start = System.nanoTime();
+    final Dominators dom = new Dominators(graph.size(), graph.offsets,
+        graph.edges, roots);
+    long end = System.nanoTime();
+    System.out.println("Computed dominators of " + (dom.order.length - 1) +
+        " classes reachable from " + roots.length + " roots in " +
+        (end - start) / 1000000 + " ms.");
+
+    final long[] retained = dom.getRetained(graph.sizes[sortBy.ordinal()]);
+    Integer[] sorted = new Integer[dom.order.length - 1];
+    for(int i=1; i < dom.order.length; ++i) {
+      sorted[i - 1] = dom.order[i];
+    }
+    Arrays.sort(sorted, new Comparator<Integer>() {
+      @Override
+      public int compare(Integer left, Integer right) {
+        if (retained[left] != retained[right]) {
+          return retained[left] > retained[right] ? -1 : 1;
+        }
+        return graph.names[left].compareTo(graph.names[right]);
+      }
+    });
+    System.out.println();
+    System.out.println("Retained classes:");
+    for(int i=0; i < sorted.length && i < limit; ++i) {
+      int cls = sorted[i];
+      int parent = dom.idom[cls];
+      System.out.println();
+      System.out.println("  Class " + graph.names[cls] + " (" +
+          graph.dependsCount[cls] + ", " + graph.depth[cls] + ")");
+      System.out.println("    Retained: " + (dom.retained[cls] - 1));
+      if (sortBy != Weight.COUNT) {
+        long own = graph.sizes[sortBy.ordinal()][cls];
+        System.out.println("    Retained " +
+            sortBy.toString().toLowerCase(Locale.ROOT) + ": " +
+            (retained[cls] - own));
+      }
+      System.out.println("    Dominator: " + (parent == dom.superRoot ?
+          "<roots>" : graph.names[parent]));
+      if (graph.jar[cls] >= 0) {
+        System.out.println("    Jar: " + graph.jarNames[graph.jar[cls]]);
+      }
+    }
+  }
+}
@@ -0,0 +1,240 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.orc.dependency;
+
+import java.util.Arrays;
+
+/**
+ * Computes the dominator tree of a graph stored as offsets and edges using
+ * the Lengauer-Tarjan algorithm with path compression. A virtual super root
+ * (numbered n) has an edge to each of the roots, so a node is dominated by
+ * a class only if every path from every root goes through that class.
+ */
+class Dominators {
+  static final int UNREACHABLE = -1;
+
+  final int size;
+  final int superRoot;
+  // the immediate dominator of each node, superRoot or UNREACHABLE
+  final int[] idom;
+  // the number of nodes dominated by each node, including itself
+  final int[] retained;
+  // the nodes in depth first order from the super root
+  final int[] order;
+
+  private final int[] offsets;
+  private final int[] edges;
+  private final int[] roots;
+
+  // the working state for the algorithm
+  private int[] dfn;
+  private int[] semi;
+  private int[] parent;
+  private int[] ancestor;
+  private int[] label;
+
+  Dominators(int size, int[] offsets, int[] edges, int[] roots) {
+    this.size = size;
+    this.superRoot = size;
+    this.offsets = offsets;
+    this.edges = edges;
+    this.roots = roots;
+    idom = new int[size + 1];
+    retained = new int[size + 1];
+    Arrays.fill(idom, UNREACHABLE);
+    order = compute();
+    dfn = null;
+    semi = null;
+    parent = null;
+    ancestor = null;
+    label = null;
+  }
+
+  private int successorStart(int v) {
+    return v == superRoot ? 0 : offsets[v];
+  }
+
+  private int successorEnd(int v) {
+    return v == superRoot ? roots.length : offsets[v + 1];
+  }
+
+  private int successor(int v, int e) {
+    return v == superRoot ? roots[e] : edges[e];
+  }
+
+  /**
+   * Number the nodes in depth first order without recursion.
+   * @return the nodes in order
+   */
+  private int[] depthFirst() {
+    int total = size + 1;
+    dfn = new int[total];
+    parent = new int[total];
+    Arrays.fill(dfn, -1);
+    int[] vertex = new int[total];
+    int[] stack = new int[total];
+    int[] edge = new int[total];
+    int count = 0;
+    int top = 0;
+    stack[0] = superRoot;
+    edge[0] = successorStart(superRoot);
+    dfn[superRoot] = count;
+    vertex[count++] = superRoot;
+    while (top >= 0) {
+      int v = stack[top];
+      if (edge[top] < successorEnd(v)) {
+        int w = successor(v, edge[top]++);
+        if (dfn[w] < 0) {
+          parent[w] = v;
+          dfn[w] = count;
+          vertex[count++] = w;
+          stack[++top] = w;
+          edge[top] = successorStart(w);
+        }
+      } else {
+        top -= 1;
+      }
+    }
+    return Arrays.copyOf(vertex, count);
+  }
+
+  /**
+   * Build the predecessor lists of the reachable nodes.
+   */
+  private int[][] predecessors(int[] vertex) {
+    int total = size + 1;
+    int[] predOffsets = new int[total + 1];
+    for(int v: vertex) {
+      for(int e=successorStart(v); e < successorEnd(v); ++e) {
+        predOffsets[successor(v, e) + 1] += 1;
+      }
+    }
+    for(int v=0; v < total; ++v) {
+      predOffsets[v + 1] += predOffsets[v];
+    }
+    int[] preds = new int[predOffsets[total]];
+    int[] fill = Arrays.copyOf(predOffsets, total);
+    for(int v: vertex) {
+      for(int e=successorStart(v); e < successorEnd(v); ++e) {
+        preds[fill[successor(v, e)]++] = v;
+      }
+    }
+    return new int[][]{predOffsets, preds};
+  }
+
+  private void compress(int v, int[] stack) {
+    int top = 0;
+    while (ancestor[ancestor[v]] != -1) {
+      stack[top++] = v;
+      v = ancestor[v];
+    }
+    while (top > 0) {
+      v = stack[--top];
+      int a = ancestor[v];
+      if (semi[label[a]] < semi[label[v]]) {
+        label[v] = label[a];
+      }
+      ancestor[v] = ancestor[a];
+    }
+  }
+
+  private int eval(int v, int[] stack) {
+    if (ancestor[v] == -1) {
+      return v;
+    }
+    compress(v, stack);
+    return label[v];
+  }
+
+  private int[] compute() {
+    int total = size + 1;
+    int[] vertex = depthFirst();
+    int[][] pred = predecessors(vertex);
+    int[] predOffsets = pred[0];
+    int[] preds = pred[1];
+    semi = new int[total];
+    ancestor = new int[total];
+    label = new int[total];
+    int[] bucketHead = new int[total];
+    int[] bucketNext = new int[total];
+    int[] stack = new int[total];
+    Arrays.fill(ancestor, -1);
+    Arrays.fill(bucketHead, -1);
+    for(int v: vertex) {
+      semi[v] = dfn[v];
+      label[v] = v;
+    }
+    for(int i=vertex.length - 1; i > 0; --i) {
+      int w = vertex[i];
+      for(int e=predOffsets[w]; e < predOffsets[w + 1]; ++e) {
+        int u = eval(preds[e], stack);
+        if (semi[u] < semi[w]) {
+          semi[w] = semi[u];
+        }
+      }
+      int s = vertex[semi[w]];
+      bucketNext[w] = bucketHead[s];
+      bucketHead[s] = w;
+      int p = parent[w];
+      ancestor[w] = p;
+      for(int v=bucketHead[p]; v != -1; v=bucketNext[v]) {
+        int u = eval(v, stack);
+        idom[v] = semi[u] < semi[v] ? u : p;
+      }
+      bucketHead[p] = -1;
+    }
+    for(int i=1; i < vertex.length; ++i) {
+      int w = vertex[i];
+      if (idom[w] != vertex[semi[w]]) {
+        idom[w] = idom[idom[w]];
+      }
+    }
+    idom[superRoot] = UNREACHABLE;
+    // dominators come before the nodes they dominate in depth first order
+    for(int v: vertex) {
+      retained[v] = 1;
+    }
+    for(int i=vertex.length - 1; i > 0; --i) {
+      int w = vertex[i];
+      retained[idom[w]] += retained[w];
+    }
+    return vertex;
+  }
+
+  /**
+   * Add up a weight over the nodes dominated by each node.
+   * @param weight the weight of each class
+   * @return the total weight dominated by each node, including itself
+   */
+  long[] getRetained(int[] weight) {
+    long[] result = new long[size + 1];
+    for(int i=1; i < order.length; ++i) {
+      result[order[i]] = weight[order[i]];
+    }
+    for(int i=order.length - 1; i > 0; --i) {
+      int w = order[i];
+      result[idom[w]] += result[w];
+    }
+    return result;
+  }
+
+  boolean isReachable(int v) {
+    return v == superRoot || idom[v] != UNREACHABLE;
+  }
+}
@@ -0,0 +1,177 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.orc.dependency;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Comparator;
+
+/**
+ * Ranks the edges leaving the root classes by their exclusive cost, which
+ * is the number of classes that are only reachable through that edge and
+ * thus would no longer be needed if the edge was cut.
+ *
+ * Rather than searching the graph once per edge, each root edge is split
+ * by a virtual node and a single dominator tree is computed. The classes
+ * dominated by the virtual node are exactly the ones lost by cutting it.
+ *
+ * Usage: EdgeCostReport (graph.tgf|saved.graph) [count]
+ */
+public class EdgeCostReport {
+  final DependencyGraph graph;
+  // the source and target of each root edge
+  final int[] source;
+  final int[] target;
+  // the number of classes only reachable through each root edge
+  final int[] exclusive;
+  // the number of root edges that lead to each class
+  final int[] rootReferences;
+
+  EdgeCostReport(DependencyGraph graph) {
+    this.graph = graph;
+    int n = graph.size();
+    int rootEdges = 0;
+    for(int v=0; v < n; ++v) {
+      if (graph.depth[v] == 0) {
+        rootEdges += graph.offsets[v + 1] - graph.offsets[v];
+      }
+    }
+    source = new int[rootEdges];
+    target = new int[rootEdges];
+    exclusive = new int[rootEdges];
+    rootReferences = new int[n];
+
+    // build the graph with the root edges split by a virtual node
+    int total = n + rootEdges;
+    int[] offsets = new int[total + 1];
+    int[] edges = new int[graph.edgeCount() + rootEdges];
+    int posn = 0;
+    int edge = 0;
+    for(int v=0; v < n; ++v) {
+      offsets[v] = posn;
+      boolean isRoot = graph.depth[v] == 0;
+      for(int e=graph.offsets[v]; e < graph.offsets[v + 1]; ++e) {
+        if (isRoot) {
+          source[edge] = v;
+          target[edge] = graph.edges[e];
+          rootReferences[graph.edges[e]] += 1;
+          edges[posn++] = n + edge++;
+        } else {
+          edges[posn++] = graph.edges[e];
+        }
+      }
+    }
+    for(edge=0; edge < rootEdges; ++edge) {
+      offsets[n + edge] = posn;
+      edges[posn++] = target[edge];
+    }
+    offsets[total] = posn;
+    Dominators dom = new Dominators(total, offsets, edges,
+        DominatorReport.getRoots(graph));
+    for(edge=0; edge < rootEdges; ++edge) {
+      // don't count the virtual node itself
+      exclusive[edge] = dom.retained[n + edge] - 1;
+    }
+  }
+
+  /**
+   * Count the classes that a class depends on with a search, since the
+   * graph is loaded without the closures and only the printed edges need
+   * them.
+   */
+  int getClosureSize(int cls) {
+    BitSet seen = new BitSet(graph.size());
+    int[] queue = new int[graph.size()];
+    int head = 0;
+    int tail = 0;
+    queue[tail++] = cls;
+    while (head < tail) {
+      int v = queue[head++];
+      for(int e=graph.offsets[v]; e < graph.offsets[v + 1]; ++e) {
+        int w = graph.edges[e];
+        if (!seen.get(w)) {
+          seen.set(w);
+          if (w != cls) {
+            queue[tail++] = w;
+          }
+        }
+      }
+    }
+    return seen.cardinality();
+  }
+
+  /**
+   * Sort the edges by their exclusive cost, breaking ties by preferring
+   * targets that fewer root edges reference, since those are cheaper to
+   * remove completely.
+   * @return the indexes of the edges in ranked order
+   */
+  Integer[] rank() {
+    Integer[] result = new Integer[source.length];
+    for(int i=0; i < result.length; ++i) {
+      result[i] = i;
+    }
+    Arrays.sort(result, new Comparator<Integer>() {
+      @Override
+      public int compare(Integer left, Integer right) {
+        if (exclusive[left] != exclusive[right]) {
+          return exclusive[left] > exclusive[right] ? -1 : 1;
+        }
+        int leftRefs = rootReferences[target[left]];
+        int rightRefs = rootReferences[target[right]];
+        if (leftRefs != rightRefs) {
+          return leftRefs < rightRefs ? -1 : 1;
+        }
+        int cmp = graph.names[source[left]].compareTo(
+            graph.names[source[right]]);
+        if (cmp != 0) {
+          return cmp;
+        }
+        return graph.names[target[left]].compareTo(graph.names[target[right]]);
+      }
+    });
+    return result;
+  }
+
+  public static void main(String[] args) throws IOException {
+    DependencyGraph graph = DependencyGraph.load(args[0], false);
+    int limit = args.length > 1 ? Integer.parseInt(args[1]) : 100;
+    long start = System.nanoTime();
+    EdgeCostReport report = new EdgeCostReport(graph);
+    Integer[] ranked = report.rank();
+    long end = System.nanoTime();
+    System.out.println("Computed the exclusive cost of " + ranked.length +
+        " root edges in " + (end - start) / 1000000 + " ms.");
+    System.out.println();
+    System.out.println("Edges:");
+    for(int i=0; i < ranked.length && i < limit; ++i) {
+      int edge = ranked[i];
+      if (report.exclusive[edge] == 0) {
+        break;
+      }
+      int child = report.target[edge];
+      System.out.println();
+      System.out.println("  " + graph.names[report.source[edge]] + " -> " +
+          graph.names[child]);
+      System.out.println("    Exclusive: " + report.exclusive[edge] +
+          ", closure: " + report.getClosureSize(child) +
+          ", root references: " + report.rootReferences[child]);
+    }
+  }
+}
@@ -0,0 +1,237 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.orc.dependency;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.IntBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+
+/**
+ * Sorts a stream of edges that doesn't fit in memory. Edges are buffered up
+ * to a fixed budget, sorted and spilled to disk as runs, and finally merged
+ * into a single file of targets ordered by source.
+ */
+class ExternalEdgeSorter implements Closeable {
+  private static final int BUFFER_SIZE = 64 * 1024;
+
+  private final File directory;
+  private final long[] buffer;
+  private int used = 0;
+  private final List<File> runs = new ArrayList<>();
+  private int runCount = 0;
+
+  /**
+   * @param directory where to put the temporary files
+   * @param budget the number of bytes to use for buffering edges
+   */
+  ExternalEdgeSorter(File directory, long budget) {
+    this.directory = directory;
+    buffer = new long[(int) Math.max(1024, Math.min(Integer.MAX_VALUE - 8,
+        budget / 8))];
+  }
+
+  void add(int source, int target) throws IOException {
+    if (used == buffer.length) {
+      spill();
+    }
+    buffer[used++] = ((long) source << 32) | target;
+  }
+
+  int getRunCount() {
+    return runCount;
+  }
+
+  private void spill() throws IOException {
+    Arrays.sort(buffer, 0, used);
+    File run = File.createTempFile("edges-", ".run", directory);
+    run.deleteOnExit();
+    try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+        new FileOutputStream(run), BUFFER_SIZE))) {
+      long last = -1;
+      for(int i=0; i < used; ++i) {
+        if (buffer[i] != last) {
+          out.writeLong(buffer[i]);
+          last = buffer[i];
+        }
+      }
+    }
+    runs.add(run);
+    runCount += 1;
+    used = 0;
+  }
+
+  /**
+   * A sorted run being merged.
+   */
+  private static class Run {
+    final DataInputStream in;
+    long current;
+
+    Run(File file) throws IOException {
+      in = new DataInputStream(new BufferedInputStream(
+          new FileInputStream(file), BUFFER_SIZE));
+    }
+
+    boolean next() throws IOException {
+      try {
+        current = in.readLong();
+        return true;
+      } catch (EOFException e) {
+        in.close();
+        return false;
+      }
+    }
+  }
+
+  /**
+   * Merge the runs into the final edge file, dropping duplicate edges and
+   * edges to classes that were never defined.
+   * @param nodes the number of nodes
+   * @param defined the nodes that can be the target of an edge
+   * @return the sorted edges
+   */
+  SortedEdges finish(int nodes, BitSet defined) throws IOException {
+    spill();
+    PriorityQueue<Run> queue = new PriorityQueue<>(Math.max(1, runs.size()),
+        new Comparator<Run>() {
+          @Override
+          public int compare(Run left, Run right) {
+            return Long.compare(left.current, right.current);
+          }
+        });
+    for(File file: runs) {
+      Run run = new Run(file);
+      if (run.next()) {
+        queue.add(run);
+      }
+    }
+    long[] offsets = new long[nodes + 1];
+    File result = File.createTempFile("edges-", ".sorted", directory);
+    result.deleteOnExit();
+    try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+        new FileOutputStream(result), BUFFER_SIZE))) {
+      long last = -1;
+      while (!queue.isEmpty()) {
+        Run run = queue.poll();
+        long edge = run.current;
+        if (run.next()) {
+          queue.add(run);
+        }
+        int target = (int) edge;
+        if (edge != last && defined.get(target)) {
+          offsets[(int) (edge >>> 32) + 1] += 1;
+          out.writeInt(target);
+          last = edge;
+        }
+      }
+    }
+    for(int v=0; v < nodes; ++v) {
+      offsets[v + 1] += offsets[v];
+    }
+    deleteRuns();
+    return new SortedEdges(result, offsets);
+  }
+
+  private void deleteRuns() {
+    for(File run: runs) {
+      run.delete();
+    }
+    runs.clear();
+  }
+
+  @Override
+  public void close() {
+    deleteRuns();
+  }
+
+  /**
+   * The targets of each node's edges, stored on disk and mapped into memory
+   * in chunks, so that the operating system pages them in and out rather
+   * than the heap holding them.
+   */
+  static class SortedEdges implements StronglyConnected.Edges, Closeable {
+    // the edges in each mapped chunk
+    private static final int CHUNK_BITS = 28;
+    private final File file;
+    private final long[] offsets;
+    private final IntBuffer[] chunks;
+
+    SortedEdges(File file, long[] offsets) throws IOException {
+      this.file = file;
+      this.offsets = offsets;
+      long size = offsets[offsets.length - 1];
+      chunks = new IntBuffer[(int) ((size + (1L << CHUNK_BITS) - 1) >>>
+          CHUNK_BITS)];
+      try (RandomAccessFile input = new RandomAccessFile(file, "r")) {
+        FileChannel channel = input.getChannel();
+        for(int c=0; c < chunks.length; ++c) {
+          long start = (long) c << CHUNK_BITS;
+          long length = Math.min(size - start, 1L << CHUNK_BITS);
+          chunks[c] = channel.map(FileChannel.MapMode.READ_ONLY, start * 4,
+              length * 4).asIntBuffer();
+        }
+      }
+    }
+
+    @Override
+    public long start(int node) {
+      return offsets[node];
+    }
+
+    @Override
+    public long end(int node) {
+      return offsets[node + 1];
+    }
+
+    long size() {
+      return offsets[offsets.length - 1];
+    }
+
+    /**
+     * Get the target of an edge.
+     * @param edge the index of the edge in the file
+     */
+    @Override
+    public int get(long edge) {
+      return chunks[(int) (edge >>> CHUNK_BITS)]
+          .get((int) (edge & ((1L << CHUNK_BITS) - 1)));
+    }
+
+    @Override
+    public void close() {
+      file.delete();
+    }
+  }
+}
@@ -0,0 +1,286 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.orc.dependency;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+
+/**
+ * A model of the project for universes that are too large for ProjectModel.
+ * The edges are sorted on disk under a fixed memory budget and the depths
+ * are computed with a level by level search that reads each reachable
+ * class's edges once. Transitive dependency sets aren't built, but their
+ * sizes can be estimated with fixed size sketches over the same edges. The
+ * jars and class directories are scanned one at a time through
+ * ClassPathScanner, so its cache is used and only one location's
+ * dependencies are on the heap.
+ *
+ * This is a semi-external model: the budget only covers the edges, while
+ * the state of each class, including the ones that are only referenced,
+ * stays on the heap. That is its name (about 40 bytes plus its characters),
+ * its entry in the map from names to ids (about 60 bytes) and its depth,
+ * jar, jar count and edge offset (20 bytes), so roughly 170 bytes for a
+ * typical class or 170 MB per million classes. Estimating the closures
+ * adds about 60 bytes per class for the components plus 2^precision bytes
+ * for each sketch that is still waiting for a class that depends on it.
+ */
+class ExternalProjectModel implements Closeable {
+  private final List<JarModel> jars;
+  private final Map<String, Integer> ids = new HashMap<>(30000);
+  private String[] names = new String[1024];
+  // the index of the jar that defines each class or -1
+  private int[] jarOf = new int[1024];
+  private int[] containingJars = new int[1024];
+  // the (class, jar) pairs for the classes that were already defined
+  private int[] duplicates = new int[64];
+  private int duplicateCount = 0;
+  private final BitSet defined = new BitSet();
+  private int classCount = 0;
+  private final ExternalEdgeSorter.SortedEdges edges;
+  private int[] depth;
+  private int maxDepth = 0;
+  // the estimated closure size of each class or null if not estimated
+  private long[] closureSize = null;
+
+  /**
+   * @param jars the jars to analyze, with the root jar first
+   * @param tmpDir the directory for the temporary edge files
+   * @param budget the number of bytes to use for sorting the edges, which
+   *               doesn't include the class names and ids
+   */
+  ExternalProjectModel(List<JarModel> jars, File tmpDir,
+                       long budget) throws IOException {
+    this.jars = jars;
+    try (ExternalEdgeSorter sorter = new ExternalEdgeSorter(tmpDir, budget)) {
+      readJars(sorter);
+      edges = sorter.finish(classCount, defined);
+      System.out.println("Finished visiting " + jars.size() + " jars, with " +
+          defined.cardinality() + " classes and " + edges.size() +
+          " edges using " + sorter.getRunCount() + " sorted runs.");
+    }
+    computeDepths();
+  }
+
+  /**
+   * Analyze either the jars listed in a tgf file or a classpath of jars and
+   * class directories, where the first entry holds the roots.
+   */
+  static ExternalProjectModel load(String path, File tmpDir,
+                                   long budget) throws IOException {
+    return new ExternalProjectModel(path.endsWith(".tgf") ?
+        ProjectModel.readTgf(path) : ProjectModel.readClassPath(path),
+        tmpDir, budget);
+  }
+
+  private int getId(String name) {
+    Integer result = ids.get(name);
+    if (result == null) {
+      result = classCount++;
+      ids.put(name, result);
+      if (result == names.length) {
+        int size = names.length * 2;
+        names = Arrays.copyOf(names, size);
+        jarOf = Arrays.copyOf(jarOf, size);
+        containingJars = Arrays.copyOf(containingJars, size);
+      }
+      names[result] = name;
+      jarOf[result] = -1;
+    }
+    return result;
+  }
+
+  private void addDuplicate(int cls, int jar) {
+    if (duplicateCount + 2 > duplicates.length) {
+      duplicates = Arrays.copyOf(duplicates, duplicates.length * 2);
+    }
+    duplicates[duplicateCount++] = cls;
+    duplicates[duplicateCount++] = jar;
+  }
+
+  private void readJars(ExternalEdgeSorter sorter) throws IOException {
+    for(int j=0; j < jars.size(); ++j) {
+      // the scan is dropped before the next location is read
+      ClassPathScanner.Scan scan =
+          ClassPathScanner.scanCached(jars.get(j).getJarLocation());
+      for(String name: scan.classes) {
+        int id = getId(name);
+        if (defined.get(id)) {
+          containingJars[id] += 1;
+          addDuplicate(id, j);
+        } else {
+          defined.set(id);
+          jarOf[id] = j;
+          containingJars[id] = 1;
+          for(String child: scan.dependencies.getDependencies(name)) {
+            if (!ProjectModel.isSystem(child)) {
+              sorter.add(id, getId(child));
+            }
+          }
+        }
+      }
+    }
+  }
+
+  private void computeDepths() throws IOException {
+    depth = new int[classCount];
+    Arrays.fill(depth, Integer.MAX_VALUE);
+    BitSet frontier = new BitSet(classCount);
+    for(int v=0; v < classCount; ++v) {
+      if (jarOf[v] == 0) {
+        depth[v] = 0;
+        frontier.set(v);
+      }
+    }
+    int level = 0;
+    while (!frontier.isEmpty()) {
+      BitSet next = new BitSet(classCount);
+      // visiting the frontier in order keeps the reads moving forward
+      for(int v=frontier.nextSetBit(0); v >= 0; v=frontier.nextSetBit(v+1)) {
+        for(long e=edges.start(v); e < edges.end(v); ++e) {
+          int child = edges.get(e);
+          if (depth[child] == Integer.MAX_VALUE) {
+            depth[child] = level + 1;
+            next.set(child);
+          }
+        }
+      }
+      frontier = next;
+      if (!frontier.isEmpty()) {
+        level += 1;
+      }
+    }
+    maxDepth = level;
+  }
+
+  /**
+   * Estimate the closure size of each class by propagating sketches over
+   * the components of the graph, as ApproximateClosures does, while the
+   * edges stay on disk.
+   * @param precision the log2 of the bytes in each sketch
+   */
+  void estimateClosures(int precision) {
+    StronglyConnected scc = new StronglyConnected(classCount, edges);
+    closureSize = ApproximateClosures.estimate(edges, scc, precision);
+  }
+
+  long getClosureSize(int cls) {
+    return closureSize[cls];
+  }
+
+  /**
+   * Find the reachable non-root classes with the largest estimated closures.
+   * @param k the number of classes to find
+   * @return the classes with the largest closure first
+   */
+  int[] getLargestClosures(int k) {
+    PriorityQueue<Integer> top = new PriorityQueue<>(Math.max(1, k),
+        new Comparator<Integer>() {
+          @Override
+          public int compare(Integer left, Integer right) {
+            // the smallest is dropped first, so ties drop the last name
+            if (closureSize[left] != closureSize[right]) {
+              return Long.compare(closureSize[left], closureSize[right]);
+            }
+            return names[right].compareTo(names[left]);
+          }
+        });
+    for(int v=defined.nextSetBit(0); v >= 0; v=defined.nextSetBit(v+1)) {
+      if (depth[v] != 0 && depth[v] != Integer.MAX_VALUE) {
+        top.add(v);
+        if (top.size() > k) {
+          top.poll();
+        }
+      }
+    }
+    int[] result = new int[top.size()];
+    for(int i=result.length - 1; i >= 0; --i) {
+      result[i] = top.poll();
+    }
+    return result;
+  }
+
+  List<JarModel> getJars() {
+    return jars;
+  }
+
+  int getClassCount() {
+    return defined.cardinality();
+  }
+
+  int getMaxDepth() {
+    return maxDepth;
+  }
+
+  int getReachableCount() {
+    int result = 0;
+    for(int v=defined.nextSetBit(0); v >= 0; v=defined.nextSetBit(v+1)) {
+      if (depth[v] != Integer.MAX_VALUE) {
+        result += 1;
+      }
+    }
+    return result;
+  }
+
+  String getName(int cls) {
+    return names[cls];
+  }
+
+  int getDepth(int cls) {
+    return depth[cls];
+  }
+
+  /**
+   * Count the classes in each jar that are unused, used and only in this
+   * jar, or used and duplicated in other jars.
+   * @return an array of {unused, usedSingle, usedDuplicated} for each jar
+   */
+  int[][] getJarUsage() {
+    int[][] result = new int[jars.size()][3];
+    for(int v=defined.nextSetBit(0); v >= 0; v=defined.nextSetBit(v+1)) {
+      countUsage(result[jarOf[v]], v);
+    }
+    for(int d=0; d < duplicateCount; d += 2) {
+      countUsage(result[duplicates[d + 1]], duplicates[d]);
+    }
+    return result;
+  }
+
+  private void countUsage(int[] counts, int cls) {
+    if (depth[cls] == Integer.MAX_VALUE) {
+      counts[0] += 1;
+    } else if (containingJars[cls] == 1) {
+      counts[1] += 1;
+    } else {
+      counts[2] += 1;
+    }
+  }
+
+  @Override
+  public void close() throws IOException {
+    edges.close();
+  }
+}
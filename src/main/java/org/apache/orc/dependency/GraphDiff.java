@@ -0,0 +1,216 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.orc.dependency;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Compares two analyzed versions of a project. Each side is either a tgf
+ * file, which is analyzed, or a graph saved with -save.
+ *
+ * Usage: GraphDiff old.(tgf|graph) new.(tgf|graph)
+ *        GraphDiff -save graph.tgf output.graph
+ */
+public class GraphDiff {
+  private final DependencyGraph before;
+  private final DependencyGraph after;
+  // the id in after for each class in before or -1 if it was removed
+  private final int[] beforeToAfter;
+  final List<Integer> addedClasses = new ArrayList<>();
+  final List<Integer> removedClasses = new ArrayList<>();
+  // edges as pairs of (source, target), using the ids of their graph
+  final List<int[]> addedEdges = new ArrayList<>();
+  final List<int[]> removedEdges = new ArrayList<>();
+  // pairs of (before id, after id) for the classes that changed
+  final List<int[]> depthChanges = new ArrayList<>();
+  final List<int[]> countChanges = new ArrayList<>();
+  long edgesOfAddedClasses = 0;
+  long edgesOfRemovedClasses = 0;
+
+  GraphDiff(DependencyGraph before, DependencyGraph after) {
+    this.before = before;
+    this.after = after;
+    beforeToAfter = new int[before.size()];
+    compare();
+  }
+
+  private void compare() {
+    // both sides are sorted by name, so merge them
+    int b = 0;
+    int a = 0;
+    while (b < before.size() || a < after.size()) {
+      int cmp;
+      if (b == before.size()) {
+        cmp = 1;
+      } else if (a == after.size()) {
+        cmp = -1;
+      } else {
+        cmp = before.names[b].compareTo(after.names[a]);
+      }
+      if (cmp < 0) {
+        beforeToAfter[b] = -1;
+        removedClasses.add(b);
+        edgesOfRemovedClasses += before.offsets[b + 1] - before.offsets[b];
+        b += 1;
+      } else if (cmp > 0) {
+        addedClasses.add(a);
+        edgesOfAddedClasses += after.offsets[a + 1] - after.offsets[a];
+        a += 1;
+      } else {
+        beforeToAfter[b] = a;
+        b += 1;
+        a += 1;
+      }
+    }
+    for(b=0; b < before.size(); ++b) {
+      a = beforeToAfter[b];
+      if (a >= 0) {
+        compareEdges(b, a);
+        if (before.depth[b] != after.depth[a]) {
+          depthChanges.add(new int[]{b, a});
+        }
+        if (before.dependsCount[b] != after.dependsCount[a]) {
+          countChanges.add(new int[]{b, a});
+        }
+      }
+    }
+  }
+
+  /**
+   * Merge the edges of a class that is in both graphs. Since the mapping
+   * between the ids preserves the name order, the mapped edges of the old
+   * class are still sorted.
+   */
+  private void compareEdges(int b, int a) {
+    int bEdge = before.offsets[b];
+    int bEnd = before.offsets[b + 1];
+    int aEdge = after.offsets[a];
+    int aEnd = after.offsets[a + 1];
+    while (bEdge < bEnd || aEdge < aEnd) {
+      int bTarget = bEdge < bEnd ? beforeToAfter[before.edges[bEdge]]
+          : Integer.MAX_VALUE;
+      if (bTarget < 0) {
+        // the target class was removed
+        removedEdges.add(new int[]{b, before.edges[bEdge++]});
+        continue;
+      }
+      int aTarget = aEdge < aEnd ? after.edges[aEdge] : Integer.MAX_VALUE;
+      if (bTarget < aTarget) {
+        removedEdges.add(new int[]{b, before.edges[bEdge++]});
+      } else if (bTarget > aTarget) {
+        addedEdges.add(new int[]{a, after.edges[aEdge++]});
+      } else {
+        bEdge += 1;
+        aEdge += 1;
+      }
+    }
+  }
+
+  static String formatDepth(int depth) {
+    return depth == Integer.MAX_VALUE ? "unreachable" : Integer.toString(depth);
+  }
+
+  void print(PrintStream out) {
+    out.println("Classes: " + before.size() + " -> " + after.size() +
+        ", edges: " + before.edgeCount() + " -> " + after.edgeCount());
+    out.println();
+    out.println("Added classes: " + addedClasses.size() + " (with " +
+        edgesOfAddedClasses + " edges)");
+    for(int a: addedClasses) {
+      out.println("  " + after.names[a] + " (" + after.dependsCount[a] + ", " +
+          formatDepth(after.depth[a]) + ")");
+    }
+    out.println();
+    out.println("Removed classes: " + removedClasses.size() + " (with " +
+        edgesOfRemovedClasses + " edges)");
+    for(int b: removedClasses) {
+      out.println("  " + before.names[b] + " (" + before.dependsCount[b] +
+          ", " + formatDepth(before.depth[b]) + ")");
+    }
+    out.println();
+    out.println("Added edges from existing classes: " + addedEdges.size());
+    for(int[] edge: addedEdges) {
+      out.println("  " + after.names[edge[0]] + " -> " + after.names[edge[1]]);
+    }
+    out.println();
+    out.println("Removed edges from existing classes: " +
+        removedEdges.size());
+    for(int[] edge: removedEdges) {
+      out.println("  " + before.names[edge[0]] + " -> " +
+          before.names[edge[1]]);
+    }
+    out.println();
+    out.println("Depth changes: " + depthChanges.size());
+    for(int[] change: depthChanges) {
+      out.println("  " + before.names[change[0]] + " " +
+          formatDepth(before.depth[change[0]]) + " -> " +
+          formatDepth(after.depth[change[1]]));
+    }
+    // put the biggest changes first
+    Collections.sort(countChanges, new Comparator<int[]>() {
+      @Override
+      public int compare(int[] left, int[] right) {
+        int l = Math.abs(after.dependsCount[left[1]] -
+            before.dependsCount[left[0]]);
+        int r = Math.abs(after.dependsCount[right[1]] -
+            before.dependsCount[right[0]]);
+        if (l != r) {
+          return l > r ? -1 : 1;
+        }
+        return Integer.compare(left[0], right[0]);
+      }
+    });
+    out.println();
+    out.println("Depends count changes: " + countChanges.size());
+    for(int[] change: countChanges) {
+      int delta = after.dependsCount[change[1]] -
+          before.dependsCount[change[0]];
+      out.println("  " + before.names[change[0]] + " " +
+          before.dependsCount[change[0]] + " -> " +
+          after.dependsCount[change[1]] + " (" + (delta > 0 ? "+" : "") +
+          delta + ")");
+    }
+  }
+
+  public static void main(String[] args) throws IOException {
+    if (args.length == 3 && "-save".equals(args[0])) {
+      DependencyGraph graph = DependencyGraph.load(args[1]);
+      graph.write(args[2]);
+      System.out.println("Saved " + graph.size() + " classes and " +
+          graph.edgeCount() + " edges to " + args[2]);
+    } else if (args.length == 2) {
+      DependencyGraph before = DependencyGraph.load(args[0]);
+      DependencyGraph after = DependencyGraph.load(args[1]);
+      long start = System.nanoTime();
+      GraphDiff diff = new GraphDiff(before, after);
+      long end = System.nanoTime();
+      System.out.println("Compared graphs in " + (end - start) / 1000000 +
+          " ms.");
+      diff.print(System.out);
+    } else {
+      System.err.println("Usage: GraphDiff old.(tgf|graph) new.(tgf|graph)");
+      System.err.println("       GraphDiff -save graph.tgf output.graph");
+      System.exit(1);
+    }
+  }
+}
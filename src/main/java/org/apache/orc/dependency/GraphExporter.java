@@ -0,0 +1,157 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.orc.dependency;
+
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Writes a graph as DOT for Graphviz or as JSON for other tools. Each node
+ * stands for one or more classes, such as the classes of a cycle, and may
+ * belong to a group, such as a jar, which DOT draws as a cluster.
+ */
+class GraphExporter {
+  // the classes of each node or null if the node is left out
+  final String[][] classes;
+  // the group of each node or null
+  final String[] groups;
+  final int[] offsets;
+  final int[] edges;
+
+  GraphExporter(String[][] classes, String[] groups, int[] offsets,
+                int[] edges) {
+    this.classes = classes;
+    this.groups = groups;
+    this.offsets = offsets;
+    this.edges = edges;
+  }
+
+  /**
+   * Escape a string for a quoted DOT or JSON string.
+   */
+  static String quote(String value) {
+    StringBuilder result = new StringBuilder(value.length() + 2);
+    result.append('"');
+    for(int i=0; i < value.length(); ++i) {
+      char ch = value.charAt(i);
+      if (ch == '"' || ch == '\\') {
+        result.append('\\').append(ch);
+      } else if (ch == '\n') {
+        result.append("\\n");
+      } else if (ch < 0x20) {
+        result.append(String.format("\\u%04x", (int) ch));
+      } else {
+        result.append(ch);
+      }
+    }
+    return result.append('"').toString();
+  }
+
+  String getLabel(int node) {
+    String[] members = classes[node];
+    if (members.length == 1) {
+      return members[0];
+    }
+    return members[0] + "\n+" + (members.length - 1) + " more in a cycle";
+  }
+
+  void writeDot(PrintStream out) {
+    out.println("digraph dependencies {");
+    out.println("  node [shape=box];");
+    Map<String, List<Integer>> clusters = new TreeMap<>();
+    for(int n=0; n < classes.length; ++n) {
+      if (classes[n] == null) {
+        continue;
+      }
+      String group = groups[n] == null ? "" : groups[n];
+      List<Integer> nodes = clusters.get(group);
+      if (nodes == null) {
+        nodes = new ArrayList<>();
+        clusters.put(group, nodes);
+      }
+      nodes.add(n);
+    }
+    int cluster = 0;
+    for(Map.Entry<String, List<Integer>> entry: clusters.entrySet()) {
+      String indent = "  ";
+      if (!entry.getKey().isEmpty()) {
+        out.println("  subgraph cluster_" + cluster++ + " {");
+        out.println("    label=" + quote(entry.getKey()) + ";");
+        indent = "    ";
+      }
+      for(int n: entry.getValue()) {
+        out.println(indent + "n" + n + " [label=" + quote(getLabel(n)) +
+            (classes[n].length > 1 ? ", style=bold" : "") + "];");
+      }
+      if (!entry.getKey().isEmpty()) {
+        out.println("  }");
+      }
+    }
+    for(int n=0; n < classes.length; ++n) {
+      if (classes[n] != null) {
+        for(int e=offsets[n]; e < offsets[n + 1]; ++e) {
+          out.println("  n" + n + " -> n" + edges[e] + ";");
+        }
+      }
+    }
+    out.println("}");
+  }
+
+  void writeJson(PrintStream out) {
+    out.println("{");
+    out.println("  \"nodes\": [");
+    boolean first = true;
+    for(int n=0; n < classes.length; ++n) {
+      if (classes[n] == null) {
+        continue;
+      }
+      StringBuilder line = new StringBuilder();
+      line.append(first ? "    " : ",\n    ");
+      line.append("{\"id\": ").append(n);
+      if (groups[n] != null) {
+        line.append(", \"group\": ").append(quote(groups[n]));
+      }
+      line.append(", \"classes\": [");
+      for(int c=0; c < classes[n].length; ++c) {
+        line.append(c == 0 ? "" : ", ").append(quote(classes[n][c]));
+      }
+      line.append("]}");
+      out.print(line);
+      first = false;
+    }
+    out.println();
+    out.println("  ],");
+    out.println("  \"edges\": [");
+    first = true;
+    for(int n=0; n < classes.length; ++n) {
+      if (classes[n] != null) {
+        for(int e=offsets[n]; e < offsets[n + 1]; ++e) {
+          out.print((first ? "    [" : ",\n    [") + n + ", " + edges[e] + "]");
+          first = false;
+        }
+      }
+    }
+    out.println();
+    out.println("  ]");
+    out.println("}");
+  }
+}
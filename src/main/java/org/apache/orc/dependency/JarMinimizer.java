@@ -0,0 +1,250 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.orc.dependency;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+/**
+ * Writes a single jar with just the classes that are reachable from the
+ * root jar. The entries are copied from the original jars without
+ * recompressing them, while the files from class directories are stored
+ * uncompressed. The root jar's manifest is always kept. The service
+ * provider files of every jar are merged, since the ServiceLoader would
+ * have seen them all, and any other duplicate entry is reported and only
+ * the first copy is kept.
+ *
+ * Usage: JarMinimizer [-keep prefix]... [-resource prefix]... [-resources]
+ *            [-indirect] graph.tgf output.jar
+ */
+public class JarMinimizer {
+  static final String MANIFEST = "META-INF/MANIFEST.MF";
+
+  private final List<String> keep = new ArrayList<>();
+  private final List<String> resources = new ArrayList<>();
+
+  /**
+   * Signatures aren't valid once we drop entries from a jar.
+   */
+  static boolean isSignature(String path) {
+    if (!path.startsWith("META-INF/") || path.indexOf('/', 9) >= 0) {
+      return false;
+    }
+    return path.endsWith(".SF") || path.endsWith(".RSA") ||
+        path.endsWith(".DSA") || path.endsWith(".EC");
+  }
+
+  /**
+   * Mark the classes matching the keep rules as roots, so that they and
+   * their dependencies are kept.
+   */
+  void addKeptRoots(ProjectModel model) {
+    if (keep.isEmpty()) {
+      return;
+    }
+    List<ClassModel> roots = new ArrayList<>();
+    for(ClassModel cls: model.getClasses()) {
+      if (Prefixes.matches(keep, cls.name)) {
+        roots.add(cls);
+      }
+    }
+    model.computeDepths(roots);
+  }
+
+  boolean keepResource(String path) {
+    return !isSignature(path) && Prefixes.matches(resources, path);
+  }
+
+  boolean isWanted(ProjectModel model, JarModel jar, String path) {
+    if (path.endsWith(".class")) {
+      // only take a class from the jar that we actually analyzed
+      ClassModel cls =
+          model.getClassModel(ProjectModel.getClassnameFromPath(path));
+      return cls != null && cls.jar == jar && cls.depth != Integer.MAX_VALUE;
+    } else if (MANIFEST.equals(path)) {
+      // the root jar's manifest describes the result
+      return jar == model.getJars().get(0);
+    }
+    return keepResource(path);
+  }
+
+  /**
+   * The providers of a service, merged from every jar that lists it.
+   */
+  private static class ServiceFile {
+    final Set<String> providers = new LinkedHashSet<>();
+    final long modified;
+
+    ServiceFile(long modified) {
+      this.modified = modified;
+    }
+  }
+
+  /**
+   * Add the providers of a service file to the merged one.
+   */
+  private static void addProviders(Map<String, ServiceFile> serviceFiles,
+                                   String path, byte[] data,
+                                   long modified) throws IOException {
+    ServiceFile merged = serviceFiles.get(path);
+    if (merged == null) {
+      merged = new ServiceFile(modified);
+      serviceFiles.put(path, merged);
+    }
+    ClassPathScanner.readProviders(new ByteArrayInputStream(data),
+        merged.providers);
+  }
+
+  /**
+   * Claim the path for an entry of the given jar.
+   * @return true if no other jar has written this path yet
+   */
+  private static boolean claim(Map<String, JarModel> written, String path,
+                               JarModel jar) {
+    JarModel first = written.get(path);
+    if (first == null) {
+      written.put(path, jar);
+      return true;
+    }
+    System.err.println("Dropping " + path + " from " + jar +
+        ", which is already taken from " + first);
+    return false;
+  }
+
+  void write(ProjectModel model, String output) throws IOException {
+    addKeptRoots(model);
+    Map<String, JarModel> written = new HashMap<>();
+    Map<String, ServiceFile> serviceFiles = new TreeMap<>();
+    long bytes = 0;
+    try (RawZipWriter writer = new RawZipWriter(output)) {
+      for(JarModel jar: model.getJars()) {
+        Path root = new File(jar.getJarLocation()).toPath();
+        if (Files.isDirectory(root)) {
+          // class directories have nothing to copy, so store their files
+          List<Path> files = new ArrayList<>();
+          collectFiles(root, files);
+          Collections.sort(files);
+          for(Path file: files) {
+            String path = ClassPathScanner.getRelativePath(root, file);
+            if (!isWanted(model, jar, path)) {
+              continue;
+            }
+            long modified = Files.getLastModifiedTime(file).toMillis();
+            if (ClassPathScanner.getService(path) != null) {
+              addProviders(serviceFiles, path, Files.readAllBytes(file),
+                  modified);
+            } else if (claim(written, path, jar)) {
+              byte[] data = Files.readAllBytes(file);
+              writer.store(path, data, modified);
+              bytes += data.length;
+            }
+          }
+          continue;
+        }
+        try (RawZipFile zip = new RawZipFile(jar.getJarLocation())) {
+          for(RawZipFile.Entry entry: zip.entries()) {
+            String path = entry.name;
+            if (entry.isDirectory() || !isWanted(model, jar, path)) {
+              continue;
+            }
+            if (ClassPathScanner.getService(path) != null) {
+              addProviders(serviceFiles, path, zip.getContents(entry),
+                  entry.getModifiedTime());
+            } else if (claim(written, path, jar)) {
+              writer.copy(zip, entry);
+              bytes += entry.compressedSize;
+            }
+          }
+        }
+      }
+      // every jar's providers are needed, so the files are concatenated
+      for(Map.Entry<String, ServiceFile> service: serviceFiles.entrySet()) {
+        StringBuilder text = new StringBuilder();
+        for(String provider: service.getValue().providers) {
+          text.append(provider).append('\n');
+        }
+        byte[] data = text.toString().getBytes(StandardCharsets.UTF_8);
+        writer.store(service.getKey(), data, service.getValue().modified);
+        bytes += data.length;
+      }
+      System.out.println("Wrote " + writer.size() + " entries (" + bytes +
+          " compressed bytes) to " + output);
+    }
+  }
+
+  private static void collectFiles(Path root,
+                                   final List<Path> files) throws IOException {
+    Files.walkFileTree(root, new SimpleFileVisitor<Path>() {
+      @Override
+      public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) {
+        if (attrs.isRegularFile()) {
+          files.add(file);
+        }
+        return FileVisitResult.CONTINUE;
+      }
+    });
+  }
+
+  public static void main(String[] args) throws IOException {
+    JarMinimizer minimizer = new JarMinimizer();
+    boolean indirect = false;
+    int arg = 0;
+    while (arg < args.length && args[arg].startsWith("-")) {
+      switch (args[arg]) {
+        case "-keep":
+          minimizer.keep.add(args[++arg]);
+          break;
+        case "-resource":
+          minimizer.resources.add(args[++arg]);
+          break;
+        case "-resources":
+          minimizer.resources.add("");
+          break;
+        case "-indirect":
+          indirect = true;
+          break;
+        default:
+          throw new IllegalArgumentException("Unknown option " + args[arg]);
+      }
+      arg += 1;
+    }
+    if (args.length - arg != 2) {
+      System.err.println("Usage: JarMinimizer [-keep prefix]..." +
+          " [-resource prefix]... [-resources] [-indirect]" +
+          " graph.tgf output.jar");
+      System.exit(1);
+    }
+    ProjectModel model = ProjectModel.load(args[arg], false, indirect);
+    minimizer.write(model, args[arg + 1]);
+  }
+}
@@ -18,6 +18,7 @@
 
 package org.apache.orc.dependency;
 
+import java.io.File;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Objects;
@@ -32,6 +33,8 @@ class JarModel {
   final String classifier;
   final String version;
   final String scope;
+  // the path of a jar or directory from a classpath, otherwise null
+  final String location;
   final List<JarModel> children = new ArrayList<>();
   final List<ClassModel> classes = new ArrayList<>();
 
@@ -43,10 +46,27 @@ class JarModel {
     this.classifier = classifier;
     this.version = version;
     this.scope = scope;
+    this.location = null;
+  }
+
+  /**
+   * A jar or directory that was given directly on a classpath.
+   */
+  JarModel(long id, String location, String scope) {
+    this.id = id;
+    this.groupId = "";
+    this.artifactId = new File(location).getName();
+    this.classifier = new File(location).isDirectory() ? "dir" : "jar";
+    this.version = "";
+    this.scope = scope;
+    this.location = location;
   }
 
   @Override
   public String toString() {
+    if (location != null) {
+      return location + ":" + scope;
+    }
     return groupId + ":" + artifactId + ":" + classifier + ":" + version
         + ":" + scope;
   }
@@ -73,6 +93,18 @@ class JarModel {
     M2_REPOSITORY = HOME + "/.m2/repository/";
   }
 
+  /**
+   * Get the repository to find jars in, which may be overridden with the
+   * same maven.repo.local property that maven uses.
+   */
+  static String getRepository() {
+    String override = System.getProperty("maven.repo.local");
+    if (override == null) {
+      return M2_REPOSITORY;
+    }
+    return override.endsWith("/") ? override : override + "/";
+  }
+
   String getClassifierName() {
     if ("jar".equals(classifier)) {
       return "";
@@ -82,7 +114,10 @@ class JarModel {
   }
 
   public String getJarLocation() {
-    return M2_REPOSITORY + groupId.replace(".", "/") + "/" + artifactId + "/" +
+    if (location != null) {
+      return location;
+    }
+    return getRepository() + groupId.replace(".", "/") + "/" + artifactId + "/" +
         version + "/" + artifactId + "-" + version + getClassifierName() +
         ".jar";
   }
@@ -0,0 +1,249 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.orc.dependency;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Rolls the class graph up into packages (or jars) and reports the tangles,
+ * which are the groups of packages that depend on each other in a cycle.
+ * For each tangle, the packages are put in an order with as little weight
+ * as possible going backwards, and the class edges that go backwards are
+ * listed, since those are the edges that close the cycles.
+ *
+ * Usage: PackageRollup [-jars] [-reachable] (graph.tgf|saved.graph)
+ */
+public class PackageRollup {
+  final RollupGraph rollup;
+  final StronglyConnected scc;
+
+  PackageRollup(RollupGraph rollup) {
+    this.rollup = rollup;
+    scc = new StronglyConnected(rollup.size(), rollup.offsets, rollup.edges);
+  }
+
+  /**
+   * Order the groups of a tangle so that few edges point backwards, using
+   * the greedy heuristic of Eades, Lin and Smyth: sinks go to the end,
+   * sources go to the front, and otherwise the group with the most weight
+   * going out rather than coming in goes next.
+   * @param component the tangle to order
+   * @return the groups in order
+   */
+  int[] order(int component) {
+    int size = scc.size(component);
+    int[] nodes = Arrays.copyOfRange(scc.members, scc.memberOffsets[component],
+        scc.memberOffsets[component + 1]);
+    int[][] weight = new int[size][size];
+    for(int i=0; i < size; ++i) {
+      for(int j=0; j < size; ++j) {
+        if (i != j) {
+          weight[i][j] = rollup.getWeight(nodes[i], nodes[j]);
+        }
+      }
+    }
+    boolean[] removed = new boolean[size];
+    int[] front = new int[size];
+    int frontCount = 0;
+    int[] back = new int[size];
+    int backCount = 0;
+    int remaining = size;
+    while (remaining > 0) {
+      boolean changed = true;
+      while (changed) {
+        changed = false;
+        for(int i=0; i < size; ++i) {
+          if (removed[i]) {
+            continue;
+          }
+          int in = 0;
+          int out = 0;
+          for(int j=0; j < size; ++j) {
+            if (!removed[j]) {
+              in += weight[j][i];
+              out += weight[i][j];
+            }
+          }
+          if (out == 0) {
+            removed[i] = true;
+            back[backCount++] = i;
+            remaining -= 1;
+            changed = true;
+          } else if (in == 0) {
+            removed[i] = true;
+            front[frontCount++] = i;
+            remaining -= 1;
+            changed = true;
+          }
+        }
+      }
+      if (remaining > 0) {
+        int best = -1;
+        long bestDelta = Long.MIN_VALUE;
+        for(int i=0; i < size; ++i) {
+          if (!removed[i]) {
+            long delta = 0;
+            for(int j=0; j < size; ++j) {
+              if (!removed[j]) {
+                delta += weight[i][j] - weight[j][i];
+              }
+            }
+            if (delta > bestDelta) {
+              bestDelta = delta;
+              best = i;
+            }
+          }
+        }
+        removed[best] = true;
+        front[frontCount++] = best;
+        remaining -= 1;
+      }
+    }
+    int[] result = new int[size];
+    for(int i=0; i < frontCount; ++i) {
+      result[i] = nodes[front[i]];
+    }
+    for(int i=0; i < backCount; ++i) {
+      result[frontCount + i] = nodes[back[backCount - 1 - i]];
+    }
+    return result;
+  }
+
+  /**
+   * Find the class edges that go backwards in the order of a tangle.
+   * @return pairs of (source, target) class ids
+   */
+  List<int[]> getClosingEdges(int[] order) {
+    int[] position = new int[rollup.size()];
+    Arrays.fill(position, -1);
+    for(int i=0; i < order.length; ++i) {
+      position[order[i]] = i;
+    }
+    DependencyGraph classes = rollup.classes;
+    List<int[]> result = new ArrayList<>();
+    for(int v=0; v < classes.size(); ++v) {
+      int source = rollup.group[v];
+      if (source < 0 || position[source] < 0) {
+        continue;
+      }
+      for(int e=classes.offsets[v]; e < classes.offsets[v + 1]; ++e) {
+        int w = classes.edges[e];
+        int target = rollup.group[w];
+        if (target >= 0 && position[target] >= 0 &&
+            position[target] < position[source]) {
+          result.add(new int[]{v, w});
+        }
+      }
+    }
+    return result;
+  }
+
+  void print(String kind) {
+    long weight = 0;
+    for(int w: rollup.weights) {
+      weight += w;
+    }
+    System.out.println(kind + ": " + rollup.size() + ", edges: " +
+        rollup.edges.length + " (from " + weight + " class edges)");
+    List<Integer> tangles = new ArrayList<>();
+    for(int c=0; c < scc.count; ++c) {
+      if (scc.size(c) > 1) {
+        tangles.add(c);
+      }
+    }
+    Collections.sort(tangles, new Comparator<Integer>() {
+      @Override
+      public int compare(Integer left, Integer right) {
+        return Integer.compare(scc.size(right), scc.size(left));
+      }
+    });
+    System.out.println("Tangles: " + tangles.size());
+    final DependencyGraph classes = rollup.classes;
+    for(int t=0; t < tangles.size(); ++t) {
+      int[] order = order(tangles.get(t));
+      List<int[]> closing = getClosingEdges(order);
+      Collections.sort(closing, new Comparator<int[]>() {
+        @Override
+        public int compare(int[] left, int[] right) {
+          int cmp = rollup.names[rollup.group[left[0]]].compareTo(
+              rollup.names[rollup.group[right[0]]]);
+          if (cmp == 0) {
+            cmp = rollup.names[rollup.group[left[1]]].compareTo(
+                rollup.names[rollup.group[right[1]]]);
+          }
+          if (cmp == 0) {
+            cmp = Integer.compare(left[0], right[0]);
+          }
+          return cmp == 0 ? Integer.compare(left[1], right[1]) : cmp;
+        }
+      });
+      System.out.println();
+      System.out.println("  Tangle " + (t + 1) + ": " + order.length + " " +
+          kind.toLowerCase() + ", " + closing.size() + " cycle closing edges");
+      for(int g: order) {
+        System.out.println("    " + rollup.names[g]);
+      }
+      System.out.println("    Cycle closing edges:");
+      int lastSource = -1;
+      int lastTarget = -1;
+      for(int[] edge: closing) {
+        int source = rollup.group[edge[0]];
+        int target = rollup.group[edge[1]];
+        if (source != lastSource || target != lastTarget) {
+          System.out.println("      " + rollup.names[source] + " -> " +
+              rollup.names[target] + " (" +
+              rollup.getWeight(source, target) + ")");
+          lastSource = source;
+          lastTarget = target;
+        }
+        System.out.println("        " + classes.names[edge[0]] + " -> " +
+            classes.names[edge[1]]);
+      }
+    }
+  }
+
+  public static void main(String[] args) throws IOException {
+    boolean jars = false;
+    boolean reachable = false;
+    int arg = 0;
+    while (arg < args.length - 1) {
+      if ("-jars".equals(args[arg])) {
+        jars = true;
+      } else if ("-reachable".equals(args[arg])) {
+        reachable = true;
+      } else {
+        throw new IllegalArgumentException("Unknown option " + args[arg]);
+      }
+      arg += 1;
+    }
+    DependencyGraph graph = DependencyGraph.load(args[arg], false);
+    long start = System.nanoTime();
+    RollupGraph rollup = jars ? RollupGraph.byJar(graph, reachable)
+        : RollupGraph.byPackage(graph, reachable);
+    PackageRollup report = new PackageRollup(rollup);
+    long end = System.nanoTime();
+    System.out.println("Rolled up " + graph.size() + " classes in " +
+        (end - start) / 1000000 + " ms.");
+    report.print(jars ? "Jars" : "Packages");
+  }
+}
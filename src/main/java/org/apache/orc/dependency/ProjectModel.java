@@ -18,22 +18,25 @@
 
 package org.apache.orc.dependency;
 
-import org.objectweb.asm.ClassReader;
-
 import java.io.BufferedReader;
 import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.BitSet;
-import java.util.Enumeration;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
-import java.util.zip.ZipEntry;
-import java.util.zip.ZipFile;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
 
 /**
  * The model of the entire project
@@ -42,8 +45,100 @@ class ProjectModel {
 
   private final List<JarModel> jars = new ArrayList<>(1000);
   private final Map<String, ClassModel> classModels = new HashMap<>(30000);
+  // the classes that refer to each missing class and the missing classes
+  // that each class refers to, so that they can be linked if it appears
+  private final Map<String, Set<ClassModel>> unresolved = new HashMap<>();
+  private final Map<ClassModel, Set<String>> missing = new HashMap<>();
+  // the classes whose incoming edges changed since the depths were updated
+  private final Set<ClassModel> dirty = new HashSet<>();
+  private int nextId = 0;
+  // the implementations of each service from the jars' provider files
+  private final Map<String, Set<String>> services = new TreeMap<>();
+  private final boolean followIndirect;
 
   ProjectModel(String tgfFilename) throws IOException {
+    this(tgfFilename, true);
+  }
+
+  /**
+   * @param tgfFilename the tgf file that lists the jars
+   * @param computeClosures should the transitive dependency sets be built,
+   *                        which needs a set per class
+   */
+  ProjectModel(String tgfFilename, boolean computeClosures) throws IOException {
+    this(readTgf(tgfFilename), computeClosures);
+  }
+
+  /**
+   * @param jars the jars to analyze, with the root jar first
+   * @param computeClosures should the transitive dependency sets be built,
+   *                        which needs a set per class
+   */
+  ProjectModel(List<JarModel> jars,
+               boolean computeClosures) throws IOException {
+    this(jars, computeClosures, false);
+  }
+
+  /**
+   * @param jars the jars to analyze, with the root jar first
+   * @param computeClosures should the transitive dependency sets be built,
+   *                        which needs a set per class
+   * @param followIndirect should the classes loaded by name through service
+   *                       files and string constants be treated as
+   *                       dependencies
+   */
+  ProjectModel(List<JarModel> jars, boolean computeClosures,
+               boolean followIndirect) throws IOException {
+    this.followIndirect = followIndirect;
+    this.jars.addAll(jars);
+    // read the jar files and build the dependency graph
+    readJars();
+    // set the classes in the root jar as depth 0
+    computeDepths();
+    if (computeClosures) {
+      buildTransitiveDepencencies();
+    }
+  }
+
+  /**
+   * Analyze either the jars listed in a tgf file or a classpath of jars and
+   * class directories, where the first entry holds the roots.
+   */
+  static ProjectModel load(String path,
+                           boolean computeClosures) throws IOException {
+    return load(path, computeClosures, false);
+  }
+
+  static ProjectModel load(String path, boolean computeClosures,
+                           boolean followIndirect) throws IOException {
+    return new ProjectModel(path.endsWith(".tgf") ? readTgf(path)
+        : readClassPath(path), computeClosures, followIndirect);
+  }
+
+  /**
+   * Make a jar for each entry of a classpath string.
+   * @param classpath the jars and directories separated by the path separator
+   * @return the list of jars with the root jar first
+   */
+  static List<JarModel> readClassPath(String classpath) {
+    List<JarModel> jars = new ArrayList<>();
+    for(String location: ClassPathScanner.split(classpath)) {
+      jars.add(new JarModel(jars.size() + 1, location,
+          jars.isEmpty() ? "root" : "compile"));
+    }
+    if (jars.isEmpty()) {
+      throw new IllegalArgumentException("Empty classpath " + classpath);
+    }
+    return jars;
+  }
+
+  /**
+   * Read the jars and their dependencies from a tgf file.
+   * @param tgfFilename the file to read
+   * @return the list of jars with the root jar first
+   */
+  static List<JarModel> readTgf(String tgfFilename) throws IOException {
+    List<JarModel> jars = new ArrayList<>(1000);
     InputStream fis = new FileInputStream(tgfFilename);
     InputStreamReader isr = new InputStreamReader(fis, StandardCharsets.UTF_8);
     BufferedReader br = new BufferedReader(isr);
@@ -70,13 +165,7 @@ class ProjectModel {
       jarsById.get(parent).children.add(jarsById.get(child));
     }
     br.close();
-    // read the jar files and build the dependency graph
-    readJars();
-    // set the classes in the root jar as depth 0
-    for(ClassModel root: jars.get(0).classes) {
-      setDepthFromRoot(root, 0);
-    }
-    buildTransitiveDepencencies();
+    return jars;
   }
 
   static String getClassnameFromPath(String path) {
@@ -86,39 +175,52 @@ class ProjectModel {
     return path.replace("/", ".");
   }
 
-  boolean isSystem(String name) {
+  static boolean isSystem(String name) {
     return name.startsWith("java.") || name.startsWith("javax.");
   }
 
   void readJars() throws IOException {
-    DependencyVisitor classGraph = new DependencyVisitor();
+    List<String> locations = new ArrayList<>(jars.size());
     for(JarModel jar: jars) {
-      ZipFile f = new ZipFile(jar.getJarLocation());
-      Enumeration<? extends ZipEntry> en = f.entries();
-      while (en.hasMoreElements()) {
-        ZipEntry e = en.nextElement();
-        String path = e.getName();
-        if (path.endsWith(".class")) {
-          String name = getClassnameFromPath(path);
-          if (classModels.containsKey(name)) {
-            ClassModel model = classModels.get(name);
-            jar.classes.add(model);
-            model.containingJars += 1;
-            System.err.println("Duplicate class " + name + " found in " +
-                jar.toString() + " and " + classModels.get(name).jar.toString());
-          } else {
-            ClassModel model = new ClassModel(jar, name, classModels.size());
-            classModels.put(name, model);
-            jar.classes.add(model);
-            new ClassReader(f.getInputStream(e)).accept(classGraph, 0);
-          }
+      locations.add(jar.getJarLocation());
+    }
+    List<ClassPathScanner.Scan> scans = ClassPathScanner.scanAll(locations);
+    DependencyVisitor classGraph = new DependencyVisitor();
+    for(int j=0; j < jars.size(); ++j) {
+      JarModel jar = jars.get(j);
+      ClassPathScanner.Scan scan = scans.get(j);
+      for(String name: scan.classes) {
+        if (classModels.containsKey(name)) {
+          ClassModel model = classModels.get(name);
+          jar.classes.add(model);
+          model.containingJars += 1;
+          System.err.println("Duplicate class " + name + " found in " +
+              jar.toString() + " and " + classModels.get(name).jar.toString());
+        } else {
+          ClassModel model = new ClassModel(jar, name, nextId++);
+          classModels.put(name, model);
+          jar.classes.add(model);
+          model.sizes = Weight.getSizes(scan.dependencies.getSize(name));
+          classGraph.addDependencies(name,
+              scan.dependencies.getDependencies(name));
+          classGraph.addClassNameStrings(name,
+              scan.dependencies.getClassNameStrings(name));
+        }
+      }
+      // every provider file is visible to the ServiceLoader
+      for(Map.Entry<String, Set<String>> service: scan.services.entrySet()) {
+        Set<String> implementations = services.get(service.getKey());
+        if (implementations == null) {
+          implementations = new TreeSet<>();
+          services.put(service.getKey(), implementations);
         }
+        implementations.addAll(service.getValue());
       }
-      f.close();
     }
     System.out.println("Finished visiting " + jars.size() + " jars, with " +
         classModels.size() + " classes.");
     fillInDependencies(classGraph);
+    fillInIndirect(classGraph);
   }
 
   /**
@@ -133,6 +235,7 @@ class ProjectModel {
           ClassModel child = classModels.get(childName);
           if (child == null) {
             System.err.println("Can't find model for " + childName);
+            addUnresolved(childName, parent);
           } else {
             parent.next.add(child);
             child.prev.add(parent);
@@ -142,11 +245,326 @@ class ProjectModel {
     }
   }
 
-  void setDepthFromRoot(ClassModel node, int depth) {
-    if (depth < node.depth) {
-      node.depth = depth;
+  /**
+   * Fills in the indirect links, which are the implementations of the
+   * services that each class refers to and the classes named by its string
+   * constants. They are only added to the next/prev links when following
+   * indirect dependencies.
+   * @param deps The mapping of which classes each class depends on.
+   */
+  void fillInIndirect(DependencyVisitor deps) {
+    int count = 0;
+    for(ClassModel parent: classModels.values()) {
+      resolveIndirect(parent, deps.getClassNameStrings(parent.name),
+          deps.getDependencies(parent.name));
+      count += parent.indirect.size();
+    }
+    if (followIndirect) {
+      for(ClassModel parent: classModels.values()) {
+        for(ClassModel child: parent.indirect) {
+          parent.next.add(child);
+          child.prev.add(parent);
+        }
+      }
+      System.out.println("Following " + count + " indirect dependencies " +
+          "from class name strings and " + services.size() + " services.");
+    }
+  }
+
+  /**
+   * Fill in the indirect links of one class from the services that it
+   * depends on and its class name strings.
+   */
+  private void resolveIndirect(ClassModel parent, Set<String> classNameStrings,
+                               Set<String> dependencies) {
+    Set<String> names = new TreeSet<>(classNameStrings);
+    for(String childName: dependencies) {
+      Set<String> implementations =
+          services.get(getClassnameFromPath(childName));
+      if (implementations != null) {
+        names.addAll(implementations);
+      }
+    }
+    for(String childName: names) {
+      ClassModel child = classModels.get(childName);
+      if (child != null && child != parent && !parent.next.contains(child)) {
+        parent.indirect.add(child);
+      }
+    }
+  }
+
+  /**
+   * Set the depth of every class with a breadth first search from the
+   * classes of the root jar.
+   */
+  void computeDepths() {
+    computeDepths(Collections.<ClassModel>emptyList());
+  }
+
+  /**
+   * Set the depth of every class with a breadth first search from the
+   * classes of the root jar and the given extra roots.
+   * @param extraRoots more classes to treat as depth 0
+   */
+  void computeDepths(Collection<ClassModel> extraRoots) {
+    dirty.clear();
+    for(ClassModel cls: classModels.values()) {
+      cls.depth = Integer.MAX_VALUE;
+    }
+    ArrayDeque<ClassModel> queue = new ArrayDeque<>();
+    for(ClassModel root: jars.get(0).classes) {
+      if (root.depth != 0) {
+        root.depth = 0;
+        queue.add(root);
+      }
+    }
+    for(ClassModel root: extraRoots) {
+      if (root.depth != 0) {
+        root.depth = 0;
+        queue.add(root);
+      }
+    }
+    while (!queue.isEmpty()) {
+      ClassModel node = queue.poll();
       for(ClassModel next: node.next) {
-        setDepthFromRoot(next, depth + 1);
+        if (next.depth == Integer.MAX_VALUE) {
+          next.depth = node.depth + 1;
+          queue.add(next);
+        }
+      }
+    }
+  }
+
+  private static void addToBucket(List<List<ClassModel>> buckets, int depth,
+                                  ClassModel cls) {
+    while (buckets.size() <= depth) {
+      buckets.add(new ArrayList<ClassModel>());
+    }
+    buckets.get(depth).add(cls);
+  }
+
+  private static void recordDepth(Map<ClassModel, Integer> changed,
+                                  ClassModel cls) {
+    if (!changed.containsKey(cls)) {
+      changed.put(cls, cls.depth);
+    }
+  }
+
+  /**
+   * Update the depths after classes were updated or removed, starting from
+   * the classes whose incoming edges changed rather than searching the whole
+   * graph again. Only the classes of the root jar are roots.
+   * @return the classes whose depth changed mapped to their old depth
+   */
+  Map<ClassModel, Integer> updateDepths() {
+    Map<ClassModel, Integer> changed = new HashMap<>();
+    JarModel root = jars.get(0);
+    List<ClassModel> seeds = new ArrayList<>();
+    for(ClassModel cls: dirty) {
+      if (classModels.get(cls.name) == cls) {
+        seeds.add(cls);
+      }
+    }
+    dirty.clear();
+    // drop the depth of each class that no longer has a parent one level
+    // up, in order of depth so that the parents are settled first
+    List<List<ClassModel>> buckets = new ArrayList<>();
+    for(ClassModel cls: seeds) {
+      if (cls.depth != Integer.MAX_VALUE) {
+        addToBucket(buckets, cls.depth, cls);
+      }
+    }
+    List<ClassModel> lost = new ArrayList<>();
+    for(int depth=0; depth < buckets.size(); ++depth) {
+      for(ClassModel cls: buckets.get(depth)) {
+        if (cls.depth != depth || cls.jar == root) {
+          continue;
+        }
+        boolean supported = false;
+        for(ClassModel parent: cls.prev) {
+          if (parent.depth == depth - 1) {
+            supported = true;
+            break;
+          }
+        }
+        if (!supported) {
+          recordDepth(changed, cls);
+          cls.depth = Integer.MAX_VALUE;
+          lost.add(cls);
+          for(ClassModel child: cls.next) {
+            if (child.depth == depth + 1) {
+              addToBucket(buckets, depth + 1, child);
+            }
+          }
+        }
+      }
+    }
+    // give the affected classes the best depth from their parents and
+    // search forward from them in order of depth
+    buckets.clear();
+    lost.addAll(seeds);
+    for(ClassModel cls: lost) {
+      int best = Integer.MAX_VALUE;
+      if (cls.jar == root) {
+        best = 0;
+      } else {
+        for(ClassModel parent: cls.prev) {
+          if (parent.depth != Integer.MAX_VALUE) {
+            best = Math.min(best, parent.depth + 1);
+          }
+        }
+      }
+      if (best < cls.depth) {
+        recordDepth(changed, cls);
+        cls.depth = best;
+        addToBucket(buckets, best, cls);
+      }
+    }
+    for(int depth=0; depth < buckets.size(); ++depth) {
+      for(ClassModel cls: buckets.get(depth)) {
+        if (cls.depth != depth) {
+          continue;
+        }
+        for(ClassModel child: cls.next) {
+          if (depth + 1 < child.depth) {
+            recordDepth(changed, child);
+            child.depth = depth + 1;
+            addToBucket(buckets, depth + 1, child);
+          }
+        }
+      }
+    }
+    // a class may have lost its depth and gotten the same one back
+    Map<ClassModel, Integer> result = new HashMap<>();
+    for(Map.Entry<ClassModel, Integer> entry: changed.entrySet()) {
+      if (entry.getKey().depth != entry.getValue()) {
+        result.put(entry.getKey(), entry.getValue());
+      }
+    }
+    return result;
+  }
+
+  /**
+   * Replace the dependencies of a class after it was recompiled, adding the
+   * class if it is new. Classes that were defined by an earlier jar aren't
+   * changed. The depths aren't updated until updateDepths is called.
+   * @param jar the jar or directory that holds the class
+   * @param name the name of the class
+   * @param dependencies the classes that it now depends on
+   * @param classNameStrings its string constants that look like class names
+   * @return the updated class or null if an earlier jar defines it
+   */
+  ClassModel updateClass(JarModel jar, String name, Set<String> dependencies,
+                         Set<String> classNameStrings) {
+    ClassModel model = classModels.get(name);
+    if (model == null) {
+      model = new ClassModel(jar, name, nextId++);
+      classModels.put(name, model);
+      jar.classes.add(model);
+      // link the classes that refer to it
+      Set<ClassModel> referrers = unresolved.remove(name);
+      if (referrers != null) {
+        for(ClassModel parent: referrers) {
+          Set<String> names = missing.get(parent);
+          if (names != null && names.remove(name) &&
+              classModels.get(parent.name) == parent) {
+            parent.next.add(model);
+            model.prev.add(parent);
+          }
+          if (names != null && names.isEmpty()) {
+            missing.remove(parent);
+          }
+        }
+      }
+    } else if (model.jar != jar) {
+      return null;
+    }
+    dirty.add(model);
+    for(ClassModel child: model.next) {
+      child.prev.remove(model);
+      dirty.add(child);
+    }
+    model.next.clear();
+    clearUnresolved(model);
+    for(String childName: dependencies) {
+      childName = getClassnameFromPath(childName);
+      if (!isSystem(childName) && !childName.equals(name)) {
+        ClassModel child = classModels.get(childName);
+        if (child == null) {
+          addUnresolved(childName, model);
+        } else if (!model.next.contains(child)) {
+          model.next.add(child);
+          child.prev.add(model);
+        }
+      }
+    }
+    model.indirect.clear();
+    resolveIndirect(model, classNameStrings, dependencies);
+    if (followIndirect) {
+      for(ClassModel child: model.indirect) {
+        model.next.add(child);
+        child.prev.add(model);
+      }
+    }
+    dirty.addAll(model.next);
+    return model;
+  }
+
+  /**
+   * Remove a class whose file was deleted. The classes that depend on it
+   * will be linked to it again if it comes back.
+   * @return the removed class or null if it wasn't defined by the jar
+   */
+  ClassModel removeClass(JarModel jar, String name) {
+    ClassModel model = classModels.get(name);
+    if (model == null || model.jar != jar) {
+      return null;
+    }
+    classModels.remove(name);
+    jar.classes.remove(model);
+    clearUnresolved(model);
+    for(ClassModel child: model.next) {
+      child.prev.remove(model);
+      dirty.add(child);
+    }
+    for(ClassModel parent: model.prev) {
+      parent.next.remove(model);
+      parent.indirect.remove(model);
+      addUnresolved(name, parent);
+    }
+    return model;
+  }
+
+  private void addUnresolved(String name, ClassModel referrer) {
+    Set<ClassModel> referrers = unresolved.get(name);
+    if (referrers == null) {
+      referrers = new HashSet<>();
+      unresolved.put(name, referrers);
+    }
+    referrers.add(referrer);
+    Set<String> names = missing.get(referrer);
+    if (names == null) {
+      names = new HashSet<>();
+      missing.put(referrer, names);
+    }
+    names.add(name);
+  }
+
+  /**
+   * Forget the missing classes that a class referred to before it was
+   * updated or removed.
+   */
+  private void clearUnresolved(ClassModel referrer) {
+    Set<String> names = missing.remove(referrer);
+    if (names != null) {
+      for(String name: names) {
+        Set<ClassModel> referrers = unresolved.get(name);
+        if (referrers != null) {
+          referrers.remove(referrer);
+          if (referrers.isEmpty()) {
+            unresolved.remove(name);
+          }
+        }
       }
     }
   }
@@ -154,7 +572,7 @@ class ProjectModel {
   void buildTransitiveDepencencies() {
     // build the complete list of classes and
     // populate the direct depends set
-    ClassModel[] universe = new ClassModel[classModels.size()];
+    ClassModel[] universe = new ClassModel[nextId];
     for (ClassModel cls : classModels.values()) {
       universe[cls.id] = cls;
       cls.depends = new BitSet(universe.length);
@@ -166,7 +584,9 @@ class ProjectModel {
 
     // iterate until we get to stability of the transitive depends sets
     BitSet recheck = new BitSet(universe.length);
-    recheck.set(0, universe.length);
+    for (ClassModel cls : classModels.values()) {
+      recheck.set(cls.id);
+    }
     int next = recheck.nextSetBit(0);
     while (next != -1) {
       recheck.clear(next);
@@ -183,9 +603,28 @@ class ProjectModel {
       }
       next = recheck.nextSetBit(0);
     }
+
+    // add up the weights of the classes in each transitive depends set
+    for (ClassModel cls : classModels.values()) {
+      Arrays.fill(cls.dependsSizes, 0);
+      for (int i = cls.depends.nextSetBit(0); i >= 0;
+           i = cls.depends.nextSetBit(i + 1)) {
+        for (int w = 0; w < Weight.SIZE; ++w) {
+          cls.dependsSizes[w] += universe[i].sizes[w];
+        }
+      }
+    }
   }
 
   public List<JarModel> getJars() {
     return jars;
   }
+
+  public Collection<ClassModel> getClasses() {
+    return classModels.values();
+  }
+
+  public ClassModel getClassModel(String name) {
+    return classModels.get(name);
+  }
 }
@@ -0,0 +1,302 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.orc.dependency;
+
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.List;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+/**
+ * A read-only view of a zip file that exposes the compressed bytes of each
+ * entry, so that they can be copied to another zip without being inflated.
+ * Only the central directory is parsed; entry data is located lazily.
+ */
+class RawZipFile implements Closeable {
+  static final int LOCAL_HEADER = 0x04034b50;
+  static final int CENTRAL_HEADER = 0x02014b50;
+  static final int END_HEADER = 0x06054b50;
+  static final int ZIP64_END_HEADER = 0x06064b50;
+  static final int ZIP64_LOCATOR = 0x07064b50;
+  static final int ZIP64_EXTRA = 0x0001;
+  static final long MAGIC_32 = 0xffffffffL;
+  static final int MAGIC_16 = 0xffff;
+  static final int STORED = 0;
+  static final int DEFLATED = 8;
+
+  /**
+   * The central directory information for one entry.
+   */
+  static class Entry {
+    final String name;
+    final byte[] rawName;
+    final int versionNeeded;
+    final int flags;
+    final int method;
+    final int time;
+    final int date;
+    final int crc;
+    final long compressedSize;
+    final long size;
+    final int externalAttributes;
+    final long localOffset;
+
+    Entry(byte[] rawName, int versionNeeded, int flags, int method, int time,
+          int date, int crc, long compressedSize, long size,
+          int externalAttributes, long localOffset) {
+      this.rawName = rawName;
+      this.name = new String(rawName, (flags & 0x800) != 0 ?
+          StandardCharsets.UTF_8 : StandardCharsets.ISO_8859_1);
+      this.versionNeeded = versionNeeded;
+      this.flags = flags;
+      this.method = method;
+      this.time = time;
+      this.date = date;
+      this.crc = crc;
+      this.compressedSize = compressedSize;
+      this.size = size;
+      this.externalAttributes = externalAttributes;
+      this.localOffset = localOffset;
+    }
+
+    boolean isDirectory() {
+      return name.endsWith("/");
+    }
+
+    /**
+     * Get the modification time from the dos time and date fields.
+     */
+    long getModifiedTime() {
+      Calendar result = Calendar.getInstance();
+      result.clear();
+      result.set(1980 + (date >> 9), ((date >> 5) & 0xf) - 1, date & 0x1f,
+          time >> 11, (time >> 5) & 0x3f, (time & 0x1f) * 2);
+      return result.getTimeInMillis();
+    }
+
+    @Override
+    public String toString() {
+      return name;
+    }
+  }
+
+  private final String path;
+  private final RandomAccessFile file;
+  private final FileChannel channel;
+  private final List<Entry> entries = new ArrayList<>();
+
+  RawZipFile(String path) throws IOException {
+    this.path = path;
+    file = new RandomAccessFile(path, "r");
+    channel = file.getChannel();
+    try {
+      readCentralDirectory();
+    } catch (IOException | RuntimeException e) {
+      file.close();
+      throw e;
+    }
+  }
+
+  List<Entry> entries() {
+    return entries;
+  }
+
+  FileChannel getChannel() {
+    return channel;
+  }
+
+  private ByteBuffer read(long offset, int length) throws IOException {
+    ByteBuffer buffer = ByteBuffer.allocate(length);
+    buffer.order(ByteOrder.LITTLE_ENDIAN);
+    while (buffer.hasRemaining()) {
+      if (channel.read(buffer, offset + buffer.position()) < 0) {
+        throw new EOFException("Truncated zip file " + path);
+      }
+    }
+    buffer.flip();
+    return buffer;
+  }
+
+  private void readCentralDirectory() throws IOException {
+    // the end record is at most 22 bytes + a 64k comment from the end
+    long length = channel.size();
+    int tailLength = (int) Math.min(length, 22 + MAGIC_16);
+    ByteBuffer tail = read(length - tailLength, tailLength);
+    int end = -1;
+    for(int i = tailLength - 22; i >= 0; --i) {
+      if (tail.getInt(i) == END_HEADER) {
+        end = i;
+        break;
+      }
+    }
+    if (end < 0) {
+      throw new IOException("Can't find end of central directory in " + path);
+    }
+    long count = tail.getShort(end + 10) & MAGIC_16;
+    long directorySize = tail.getInt(end + 12) & MAGIC_32;
+    long directoryOffset = tail.getInt(end + 16) & MAGIC_32;
+    long endOffset = length - tailLength + end;
+    ByteBuffer locator = endOffset >= 20 ? read(endOffset - 20, 20) : null;
+    boolean zip64 = locator != null && locator.getInt(0) == ZIP64_LOCATOR;
+    if (!zip64 && (directorySize == MAGIC_32 ||
+        directoryOffset == MAGIC_32)) {
+      throw new IOException("Missing zip64 locator in " + path);
+    }
+    // a plain zip may have exactly 65535 entries, so only the locator says
+    // whether the count overflowed
+    if (zip64) {
+      ByteBuffer end64 = read(locator.getLong(8), 56);
+      if (end64.getInt(0) != ZIP64_END_HEADER) {
+        throw new IOException("Bad zip64 end of central directory in " + path);
+      }
+      count = end64.getLong(32);
+      directorySize = end64.getLong(40);
+      directoryOffset = end64.getLong(48);
+    }
+    if (directorySize > Integer.MAX_VALUE) {
+      throw new IOException("Central directory too large in " + path);
+    }
+    ByteBuffer dir = read(directoryOffset, (int) directorySize);
+    for(long i=0; i < count; ++i) {
+      if (dir.getInt() != CENTRAL_HEADER) {
+        throw new IOException("Bad central directory header in " + path);
+      }
+      dir.getShort(); // version made by
+      int versionNeeded = dir.getShort() & MAGIC_16;
+      int flags = dir.getShort() & MAGIC_16;
+      int method = dir.getShort() & MAGIC_16;
+      int time = dir.getShort() & MAGIC_16;
+      int date = dir.getShort() & MAGIC_16;
+      int crc = dir.getInt();
+      long compressedSize = dir.getInt() & MAGIC_32;
+      long size = dir.getInt() & MAGIC_32;
+      int nameLength = dir.getShort() & MAGIC_16;
+      int extraLength = dir.getShort() & MAGIC_16;
+      int commentLength = dir.getShort() & MAGIC_16;
+      dir.getShort(); // disk number
+      dir.getShort(); // internal attributes
+      int externalAttributes = dir.getInt();
+      long localOffset = dir.getInt() & MAGIC_32;
+      byte[] name = new byte[nameLength];
+      dir.get(name);
+      int extraEnd = dir.position() + extraLength;
+      // the zip64 extra only holds the fields that overflowed, in order
+      while (dir.position() + 4 <= extraEnd) {
+        int tag = dir.getShort() & MAGIC_16;
+        int tagLength = dir.getShort() & MAGIC_16;
+        int next = dir.position() + tagLength;
+        if (tag == ZIP64_EXTRA) {
+          if (size == MAGIC_32) {
+            size = dir.getLong();
+          }
+          if (compressedSize == MAGIC_32) {
+            compressedSize = dir.getLong();
+          }
+          if (localOffset == MAGIC_32) {
+            localOffset = dir.getLong();
+          }
+        }
+        dir.position(next);
+      }
+      dir.position(extraEnd + commentLength);
+      entries.add(new Entry(name, versionNeeded, flags, method, time, date,
+          crc, compressedSize, size, externalAttributes, localOffset));
+    }
+  }
+
+  /**
+   * Read and decompress an entry, which is only done for the few entries
+   * that have to be rewritten, such as service provider files.
+   * @param entry the entry to read
+   * @return the uncompressed bytes
+   */
+  byte[] getContents(Entry entry) throws IOException {
+    if (entry.compressedSize > Integer.MAX_VALUE ||
+        entry.size > Integer.MAX_VALUE) {
+      throw new IOException("Entry " + entry.name + " is too large to read" +
+          " in " + path);
+    }
+    byte[] compressed = read(getDataOffset(entry),
+        (int) entry.compressedSize).array();
+    if (entry.method == STORED) {
+      return compressed;
+    } else if (entry.method != DEFLATED) {
+      throw new IOException("Unsupported compression method " + entry.method +
+          " for " + entry.name + " in " + path);
+    }
+    Inflater inflater = new Inflater(true);
+    try {
+      inflater.setInput(compressed);
+      byte[] result = new byte[(int) entry.size];
+      int done = 0;
+      while (done < result.length && !inflater.finished()) {
+        int count = inflater.inflate(result, done, result.length - done);
+        if (count == 0 && inflater.needsInput()) {
+          break;
+        }
+        done += count;
+      }
+      if (done != result.length) {
+        throw new EOFException("Truncated entry " + entry.name + " in " +
+            path);
+      }
+      return result;
+    } catch (DataFormatException e) {
+      throw new IOException("Bad compressed data for " + entry.name + " in " +
+          path, e);
+    } finally {
+      inflater.end();
+    }
+  }
+
+  /**
+   * Find where the compressed bytes of the entry start.
+   * @param entry the entry to find
+   * @return the offset in the file of the entry's data
+   */
+  long getDataOffset(Entry entry) throws IOException {
+    ByteBuffer header = read(entry.localOffset, 30);
+    if (header.getInt(0) != LOCAL_HEADER) {
+      throw new IOException("Bad local header for " + entry.name + " in " +
+          path);
+    }
+    int nameLength = header.getShort(26) & MAGIC_16;
+    int extraLength = header.getShort(28) & MAGIC_16;
+    return entry.localOffset + 30 + nameLength + extraLength;
+  }
+
+  @Override
+  public void close() throws IOException {
+    file.close();
+  }
+
+  @Override
+  public String toString() {
+    return path;
+  }
+}
@@ -0,0 +1,209 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.orc.dependency;
+
+import java.io.Closeable;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.List;
+import java.util.zip.CRC32;
+
+/**
+ * Writes a zip file by copying the already compressed entries of other zip
+ * files. The compressed bytes and CRCs are reused as is, so no entry is
+ * ever inflated or deflated. Files from class directories are stored
+ * without compression.
+ */
+class RawZipWriter implements Closeable {
+  private final FileOutputStream out;
+  private final FileChannel channel;
+  private final List<RawZipFile.Entry> written = new ArrayList<>();
+  private final List<Long> offsets = new ArrayList<>();
+
+  RawZipWriter(String path) throws IOException {
+    out = new FileOutputStream(path);
+    channel = out.getChannel();
+  }
+
+  private static ByteBuffer allocate(int length) {
+    ByteBuffer result = ByteBuffer.allocate(length);
+    result.order(ByteOrder.LITTLE_ENDIAN);
+    return result;
+  }
+
+  private void write(ByteBuffer buffer) throws IOException {
+    buffer.flip();
+    while (buffer.hasRemaining()) {
+      channel.write(buffer);
+    }
+  }
+
+  private long writeLocalHeader(RawZipFile.Entry entry) throws IOException {
+    long offset = channel.position();
+    if (offset >= RawZipFile.MAGIC_32 ||
+        entry.compressedSize >= RawZipFile.MAGIC_32 ||
+        entry.size >= RawZipFile.MAGIC_32) {
+      throw new IOException("Entry " + entry.name + " needs zip64 entries," +
+          " which aren't supported");
+    }
+    // we know the sizes up front, so we never need a data descriptor
+    ByteBuffer header = allocate(30 + entry.rawName.length);
+    header.putInt(RawZipFile.LOCAL_HEADER);
+    header.putShort((short) entry.versionNeeded);
+    header.putShort((short) (entry.flags & ~0x8));
+    header.putShort((short) entry.method);
+    header.putShort((short) entry.time);
+    header.putShort((short) entry.date);
+    header.putInt(entry.crc);
+    header.putInt((int) entry.compressedSize);
+    header.putInt((int) entry.size);
+    header.putShort((short) entry.rawName.length);
+    header.putShort((short) 0);
+    header.put(entry.rawName);
+    write(header);
+    return offset;
+  }
+
+  /**
+   * Copy an entry from the source zip into this one.
+   * @param source the zip that holds the entry
+   * @param entry the entry to copy
+   */
+  void copy(RawZipFile source, RawZipFile.Entry entry) throws IOException {
+    long offset = writeLocalHeader(entry);
+    long start = source.getDataOffset(entry);
+    long remaining = entry.compressedSize;
+    FileChannel input = source.getChannel();
+    while (remaining > 0) {
+      long done = input.transferTo(start + entry.compressedSize - remaining,
+          remaining, channel);
+      if (done <= 0) {
+        throw new IOException("Truncated entry " + entry.name + " in " +
+            source);
+      }
+      remaining -= done;
+    }
+    written.add(entry);
+    offsets.add(offset);
+  }
+
+  /**
+   * Add an uncompressed entry, such as a file from a class directory.
+   * @param name the path of the entry
+   * @param data the contents of the entry
+   * @param modified the modification time in milliseconds
+   */
+  void store(String name, byte[] data, long modified) throws IOException {
+    CRC32 crc = new CRC32();
+    crc.update(data);
+    Calendar time = Calendar.getInstance();
+    time.setTimeInMillis(modified);
+    // dos dates start in 1980
+    int year = Math.max(0, time.get(Calendar.YEAR) - 1980);
+    int dosTime = time.get(Calendar.HOUR_OF_DAY) << 11 |
+        time.get(Calendar.MINUTE) << 5 | time.get(Calendar.SECOND) / 2;
+    int dosDate = year << 9 | (time.get(Calendar.MONTH) + 1) << 5 |
+        time.get(Calendar.DAY_OF_MONTH);
+    RawZipFile.Entry entry = new RawZipFile.Entry(
+        name.getBytes(StandardCharsets.UTF_8), 10, 0x800, RawZipFile.STORED,
+        dosTime, dosDate, (int) crc.getValue(), data.length, data.length, 0,
+        channel.position());
+    long offset = writeLocalHeader(entry);
+    ByteBuffer buffer = ByteBuffer.wrap(data);
+    buffer.position(data.length);
+    write(buffer);
+    written.add(entry);
+    offsets.add(offset);
+  }
+
+  int size() {
+    return written.size();
+  }
+
+  @Override
+  public void close() throws IOException {
+    try {
+      long directoryOffset = channel.position();
+      for(int i=0; i < written.size(); ++i) {
+        RawZipFile.Entry entry = written.get(i);
+        ByteBuffer header = allocate(46 + entry.rawName.length);
+        header.putInt(RawZipFile.CENTRAL_HEADER);
+        header.putShort((short) 45);
+        header.putShort((short) entry.versionNeeded);
+        header.putShort((short) (entry.flags & ~0x8));
+        header.putShort((short) entry.method);
+        header.putShort((short) entry.time);
+        header.putShort((short) entry.date);
+        header.putInt(entry.crc);
+        header.putInt((int) entry.compressedSize);
+        header.putInt((int) entry.size);
+        header.putShort((short) entry.rawName.length);
+        header.putShort((short) 0); // extra
+        header.putShort((short) 0); // comment
+        header.putShort((short) 0); // disk number
+        header.putShort((short) 0); // internal attributes
+        header.putInt(entry.externalAttributes);
+        header.putInt((int) (long) offsets.get(i));
+        header.put(entry.rawName);
+        write(header);
+      }
+      long directoryEnd = channel.position();
+      long directorySize = directoryEnd - directoryOffset;
+      boolean zip64 = written.size() >= RawZipFile.MAGIC_16 ||
+          directoryOffset >= RawZipFile.MAGIC_32;
+      if (zip64) {
+        ByteBuffer end64 = allocate(56 + 20);
+        end64.putInt(RawZipFile.ZIP64_END_HEADER);
+        end64.putLong(44);
+        end64.putShort((short) 45);
+        end64.putShort((short) 45);
+        end64.putInt(0);
+        end64.putInt(0);
+        end64.putLong(written.size());
+        end64.putLong(written.size());
+        end64.putLong(directorySize);
+        end64.putLong(directoryOffset);
+        end64.putInt(RawZipFile.ZIP64_LOCATOR);
+        end64.putInt(0);
+        end64.putLong(directoryEnd);
+        end64.putInt(1);
+        write(end64);
+      }
+      ByteBuffer end = allocate(22);
+      end.putInt(RawZipFile.END_HEADER);
+      end.putShort((short) 0);
+      end.putShort((short) 0);
+      int count = zip64 ? RawZipFile.MAGIC_16 : written.size();
+      end.putShort((short) count);
+      end.putShort((short) count);
+      end.putInt((int) directorySize);
+      end.putInt(zip64 ? (int) RawZipFile.MAGIC_32 : (int) directoryOffset);
+      end.putShort((short) 0);
+      write(end);
+    } finally {
+      out.close();
+    }
+  }
+}
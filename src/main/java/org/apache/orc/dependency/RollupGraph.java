@@ -0,0 +1,146 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.orc.dependency;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The class graph rolled up into groups, such as packages or jars. Each
+ * edge between two groups is weighted by the number of class edges that it
+ * stands for.
+ */
+class RollupGraph {
+  final DependencyGraph classes;
+  final String[] names;
+  // the group of each class or -1 if the class isn't included
+  final int[] group;
+  final int[] offsets;
+  final int[] edges;
+  final int[] weights;
+
+  /**
+   * Roll up the classes in a single pass over the class edges.
+   * @param classes the class graph
+   * @param group the group of each class or -1 to leave it out
+   * @param names the name of each group
+   */
+  RollupGraph(DependencyGraph classes, int[] group, String[] names) {
+    this.classes = classes;
+    this.group = group;
+    this.names = names;
+    Map<Long, Integer> weight = new HashMap<>();
+    for(int v=0; v < classes.size(); ++v) {
+      int source = group[v];
+      if (source < 0) {
+        continue;
+      }
+      for(int e=classes.offsets[v]; e < classes.offsets[v + 1]; ++e) {
+        int target = group[classes.edges[e]];
+        if (target >= 0 && target != source) {
+          Long key = ((long) source << 32) | target;
+          Integer old = weight.get(key);
+          weight.put(key, old == null ? 1 : old + 1);
+        }
+      }
+    }
+    long[] keys = new long[weight.size()];
+    int k = 0;
+    for(Long key: weight.keySet()) {
+      keys[k++] = key;
+    }
+    Arrays.sort(keys);
+    offsets = new int[names.length + 1];
+    edges = new int[keys.length];
+    weights = new int[keys.length];
+    for(int e=0; e < keys.length; ++e) {
+      offsets[(int) (keys[e] >>> 32) + 1] += 1;
+      edges[e] = (int) keys[e];
+      weights[e] = weight.get(keys[e]);
+    }
+    for(int g=0; g < names.length; ++g) {
+      offsets[g + 1] += offsets[g];
+    }
+  }
+
+  static String getPackage(String className) {
+    int dot = className.lastIndexOf('.');
+    return dot < 0 ? "" : className.substring(0, dot);
+  }
+
+  /**
+   * Group the classes by package.
+   * @param reachableOnly only include the classes reachable from the roots
+   */
+  static RollupGraph byPackage(DependencyGraph classes,
+                               boolean reachableOnly) {
+    Map<String, Integer> ids = new HashMap<>();
+    List<String> names = new ArrayList<>();
+    int[] group = new int[classes.size()];
+    for(int v=0; v < classes.size(); ++v) {
+      if (reachableOnly && classes.depth[v] == Integer.MAX_VALUE) {
+        group[v] = -1;
+        continue;
+      }
+      String pkg = getPackage(classes.names[v]);
+      Integer id = ids.get(pkg);
+      if (id == null) {
+        id = names.size();
+        ids.put(pkg, id);
+        names.add(pkg);
+      }
+      group[v] = id;
+    }
+    return new RollupGraph(classes, group,
+        names.toArray(new String[names.size()]));
+  }
+
+  /**
+   * Group the classes by the jar that they were loaded from.
+   * @param reachableOnly only include the classes reachable from the roots
+   */
+  static RollupGraph byJar(DependencyGraph classes, boolean reachableOnly) {
+    String[] names = Arrays.copyOf(classes.jarNames,
+        classes.jarNames.length + 1);
+    int unknown = classes.jarNames.length;
+    names[unknown] = "<unknown>";
+    int[] group = new int[classes.size()];
+    for(int v=0; v < classes.size(); ++v) {
+      if (reachableOnly && classes.depth[v] == Integer.MAX_VALUE) {
+        group[v] = -1;
+      } else {
+        group[v] = classes.jar[v] < 0 ? unknown : classes.jar[v];
+      }
+    }
+    return new RollupGraph(classes, group, names);
+  }
+
+  int size() {
+    return names.length;
+  }
+
+  int getWeight(int source, int target) {
+    int e = Arrays.binarySearch(edges, offsets[source], offsets[source + 1],
+        target);
+    return e < 0 ? 0 : weights[e];
+  }
+}
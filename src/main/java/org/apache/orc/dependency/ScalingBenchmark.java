@@ -0,0 +1,229 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.orc.dependency;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.PrintStream;
+import java.io.PrintWriter;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Runs ProjectModel and DependencyTracker over synthetic projects of
+ * increasing size and reports how the time and memory grow. The growth
+ * exponent between consecutive sizes shows when something stops scaling
+ * linearly.
+ *
+ * Usage: ScalingBenchmark [generator options] [-sizes n,n,...] dir
+ */
+public class ScalingBenchmark {
+  // the analysis is recursive, so give it plenty of stack
+  private static final long STACK_SIZE = 1L << 30;
+
+  /**
+   * The measurements of one run.
+   */
+  static class Result {
+    String name;
+    int classes;
+    long nanos;
+    long peakHeap;
+    long allocated;
+  }
+
+  interface Workload {
+    void run() throws Exception;
+  }
+
+  private static final PrintStream NULL_OUTPUT =
+      new PrintStream(new OutputStream() {
+        @Override
+        public void write(int b) {
+          // discard
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+          // discard
+        }
+      });
+
+  /**
+   * Get the bytes allocated by the current thread and by the scanner's
+   * thread pool, which does the parsing.
+   */
+  static long getAllocatedBytes() {
+    long thread = ClassPathScanner.getThreadAllocatedBytes();
+    if (thread < 0) {
+      return -1;
+    }
+    return thread + ClassPathScanner.getScanAllocatedBytes();
+  }
+
+  static long getPeakHeap() {
+    long result = 0;
+    for(MemoryPoolMXBean pool: ManagementFactory.getMemoryPoolMXBeans()) {
+      if (pool.getType() == MemoryType.HEAP) {
+        result += pool.getPeakUsage().getUsed();
+      }
+    }
+    return result;
+  }
+
+  static void resetPeakHeap() {
+    System.gc();
+    for(MemoryPoolMXBean pool: ManagementFactory.getMemoryPoolMXBeans()) {
+      if (pool.getType() == MemoryType.HEAP) {
+        pool.resetPeakUsage();
+      }
+    }
+  }
+
+  /**
+   * Measure a workload in its own thread with the output discarded.
+   */
+  static Result measure(String name, int classes,
+                        final Workload workload) throws Exception {
+    final Result result = new Result();
+    result.name = name;
+    result.classes = classes;
+    final Exception[] failure = new Exception[1];
+    resetPeakHeap();
+    Thread thread = new Thread(null, new Runnable() {
+      @Override
+      public void run() {
+        PrintStream stdout = System.out;
+        PrintStream stderr = System.err;
+        System.setOut(NULL_OUTPUT);
+        System.setErr(NULL_OUTPUT);
+        long allocated = getAllocatedBytes();
+        long start = System.nanoTime();
+        try {
+          workload.run();
+        } catch (Exception e) {
+          failure[0] = e;
+        } finally {
+          result.nanos = System.nanoTime() - start;
+          result.allocated = getAllocatedBytes() - allocated;
+          System.setOut(stdout);
+          System.setErr(stderr);
+        }
+      }
+    }, name, STACK_SIZE);
+    thread.start();
+    thread.join();
+    if (failure[0] != null) {
+      throw failure[0];
+    }
+    result.peakHeap = getPeakHeap();
+    return result;
+  }
+
+  static String format(Result result, Result previous) {
+    double seconds = result.nanos / 1e9;
+    String exponent = "-";
+    if (previous != null && previous.classes != result.classes) {
+      exponent = String.format(Locale.ROOT, "%.2f",
+          Math.log((double) result.nanos / previous.nanos) /
+          Math.log((double) result.classes / previous.classes));
+    }
+    return String.format(Locale.ROOT, "%s\t%d\t%.3f\t%s\t%d\t%d\t%.1f",
+        result.name, result.classes, seconds, exponent,
+        result.peakHeap / (1024 * 1024), result.allocated / (1024 * 1024),
+        result.allocated < 0 ? 0 : result.allocated / (1024 * 1024) / seconds);
+  }
+
+  public static void main(String[] args) throws Exception {
+    final SyntheticProject project = new SyntheticProject();
+    int[] sizes = {1000, 2000, 4000, 8000, 16000, 32000};
+    int arg = 0;
+    while (arg < args.length - 1) {
+      if ("-sizes".equals(args[arg])) {
+        String[] parts = args[arg + 1].split(",");
+        sizes = new int[parts.length];
+        for(int i=0; i < parts.length; ++i) {
+          sizes[i] = Integer.parseInt(parts[i]);
+        }
+        arg += 2;
+      } else {
+        int next = project.parseOptions(args, arg);
+        if (next == arg) {
+          break;
+        }
+        arg = next;
+      }
+    }
+    if (arg != args.length - 1) {
+      System.err.println("Usage: ScalingBenchmark [generator options]" +
+          " [-sizes n,n,...] dir");
+      System.exit(1);
+    }
+    File directory = new File(args[arg]);
+    List<String> report = new ArrayList<>();
+    report.add("workload\tclasses\tseconds\texponent\tpeak MB\talloc MB" +
+        "\talloc MB/s");
+    System.out.println(report.get(0));
+    Result previousModel = null;
+    Result previousTracker = null;
+    for(int size: sizes) {
+      project.classes = size;
+      File dir = new File(directory, "n" + size);
+      final File tgf = project.generate(dir);
+      final String bundle = new File(dir, "bundle.jar").getPath();
+      System.setProperty("maven.repo.local",
+          new File(dir, "repository").getAbsolutePath());
+      Result model = measure("ProjectModel", size, new Workload() {
+        @Override
+        public void run() throws IOException {
+          new ProjectModel(tgf.getPath());
+        }
+      });
+      Result tracker = measure("DependencyTracker", size, new Workload() {
+        @Override
+        public void run() throws IOException {
+          DependencyTracker.main(new String[]{bundle,
+              project.getRootPrefix()});
+        }
+      });
+      for(String line: new String[]{format(model, previousModel),
+          format(tracker, previousTracker)}) {
+        System.out.println(line);
+        report.add(line);
+      }
+      previousModel = model;
+      previousTracker = tracker;
+    }
+    File output = new File(directory, "scaling.tsv");
+    try (PrintWriter out = new PrintWriter(new OutputStreamWriter(
+        new FileOutputStream(output), StandardCharsets.UTF_8))) {
+      for(String line: report) {
+        out.println(line);
+      }
+    }
+    System.out.println("Wrote " + output);
+  }
+}
@@ -0,0 +1,163 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.orc.dependency;
+
+import java.util.Arrays;
+
+/**
+ * Finds the strongly connected components of a graph stored as offsets and
+ * edges using Tarjan's algorithm without recursion. The components are
+ * numbered in reverse topological order, so every edge between components
+ * goes from a higher number to a lower one.
+ */
+class StronglyConnected {
+
+  /**
+   * The edges of each node, which may be kept on disk rather than in arrays.
+   */
+  interface Edges {
+    long start(int node);
+
+    long end(int node);
+
+    int get(long edge);
+  }
+
+  // the component of each node
+  final int[] component;
+  final int count;
+  // the nodes of component c are members[memberOffsets[c]] to
+  // members[memberOffsets[c+1]-1]
+  final int[] memberOffsets;
+  final int[] members;
+  // whether each component has a cycle, which for single nodes means a
+  // self loop
+  final boolean[] cyclic;
+
+  /**
+   * Wrap the offsets and edges of a graph on the heap.
+   */
+  static Edges wrap(final int[] offsets, final int[] edges) {
+    return new Edges() {
+      @Override
+      public long start(int node) {
+        return offsets[node];
+      }
+
+      @Override
+      public long end(int node) {
+        return offsets[node + 1];
+      }
+
+      @Override
+      public int get(long edge) {
+        return edges[(int) edge];
+      }
+    };
+  }
+
+  StronglyConnected(int size, int[] offsets, int[] edges) {
+    this(size, wrap(offsets, edges));
+  }
+
+  StronglyConnected(int size, Edges edges) {
+    component = new int[size];
+    int[] index = new int[size];
+    int[] lowLink = new int[size];
+    boolean[] onStack = new boolean[size];
+    int[] stack = new int[size];
+    int[] callStack = new int[size];
+    long[] edgePosn = new long[size];
+    Arrays.fill(index, -1);
+    int nextIndex = 0;
+    int stackTop = 0;
+    int components = 0;
+    for(int start=0; start < size; ++start) {
+      if (index[start] >= 0) {
+        continue;
+      }
+      int callTop = 0;
+      callStack[0] = start;
+      edgePosn[start] = edges.start(start);
+      index[start] = lowLink[start] = nextIndex++;
+      stack[stackTop++] = start;
+      onStack[start] = true;
+      while (callTop >= 0) {
+        int v = callStack[callTop];
+        if (edgePosn[v] < edges.end(v)) {
+          int w = edges.get(edgePosn[v]++);
+          if (index[w] < 0) {
+            index[w] = lowLink[w] = nextIndex++;
+            stack[stackTop++] = w;
+            onStack[w] = true;
+            edgePosn[w] = edges.start(w);
+            callStack[++callTop] = w;
+          } else if (onStack[w]) {
+            lowLink[v] = Math.min(lowLink[v], index[w]);
+          }
+        } else {
+          if (lowLink[v] == index[v]) {
+            int w;
+            do {
+              w = stack[--stackTop];
+              onStack[w] = false;
+              component[w] = components;
+            } while (w != v);
+            components += 1;
+          }
+          callTop -= 1;
+          if (callTop >= 0) {
+            int parent = callStack[callTop];
+            lowLink[parent] = Math.min(lowLink[parent], lowLink[v]);
+          }
+        }
+      }
+    }
+    count = components;
+    memberOffsets = new int[count + 1];
+    for(int v=0; v < size; ++v) {
+      memberOffsets[component[v] + 1] += 1;
+    }
+    for(int c=0; c < count; ++c) {
+      memberOffsets[c + 1] += memberOffsets[c];
+    }
+    members = new int[size];
+    int[] fill = Arrays.copyOf(memberOffsets, count);
+    for(int v=0; v < size; ++v) {
+      members[fill[component[v]]++] = v;
+    }
+    cyclic = new boolean[count];
+    for(int v=0; v < size; ++v) {
+      int c = component[v];
+      if (memberOffsets[c + 1] - memberOffsets[c] > 1) {
+        cyclic[c] = true;
+      } else {
+        for(long e=edges.start(v); e < edges.end(v); ++e) {
+          if (edges.get(e) == v) {
+            cyclic[c] = true;
+          }
+        }
+      }
+    }
+  }
+
+  int size(int c) {
+    return memberOffsets[c + 1] - memberOffsets[c];
+  }
+}
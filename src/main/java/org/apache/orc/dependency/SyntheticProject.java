@@ -0,0 +1,261 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.orc.dependency;
+
+import org.objectweb.asm.ClassWriter;
+import org.objectweb.asm.Opcodes;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+/**
+ * Generates a synthetic project with a known shape, so that the tools can be
+ * measured on large graphs without downloading the real dependencies. The
+ * output directory gets a maven style repository with the jars, a tgf file
+ * that lists them, and a bundle jar with all of the classes.
+ *
+ * The classes are numbered and each one depends on classes with higher
+ * numbers, except that blocks of consecutive classes also form cycles.
+ * The classes of the first jar are the roots.
+ *
+ * Usage: SyntheticProject [-classes n] [-jars n] [-fanout mean]
+ *            [-powerlaw alpha] [-scc size] [-duplicates rate] [-seed n] dir
+ */
+public class SyntheticProject {
+  static final String GROUP = "org.apache.hive.synth";
+  static final String PACKAGE = "org/apache/hive/synth/";
+  static final int CLASSES_PER_PACKAGE = 50;
+
+  int classes = 10000;
+  int jars = 20;
+  double fanout = 5;
+  // if set, the fanout follows a power law with this exponent
+  double powerLaw = 0;
+  int sccSize = 1;
+  double duplicateRate = 0;
+  long seed = 42;
+
+  int edgeCount = 0;
+  int duplicateCount = 0;
+
+  int getJar(int cls) {
+    return (int) ((long) cls * jars / classes);
+  }
+
+  String getClassName(int cls) {
+    return PACKAGE + "j" + getJar(cls) + "/p" + (cls / CLASSES_PER_PACKAGE) +
+        "/C" + cls;
+  }
+
+  /**
+   * The prefix of the root classes, in the dotted form.
+   */
+  String getRootPrefix() {
+    return PACKAGE.replace('/', '.') + "j0.";
+  }
+
+  String getArtifactId(int jar) {
+    return "synth" + jar;
+  }
+
+  private int nextFanout(Random random) {
+    if (powerLaw > 1) {
+      // a pareto distribution with the requested mean
+      double min = fanout * (powerLaw - 1) / powerLaw;
+      return (int) Math.min(classes, min / Math.pow(1 - random.nextDouble(),
+          1 / powerLaw));
+    }
+    // a geometric distribution with the requested mean
+    double p = 1 / (fanout + 1);
+    return (int) (Math.log(1 - random.nextDouble()) / Math.log(1 - p));
+  }
+
+  /**
+   * Pick the dependencies for a class.
+   */
+  int[] getDependencies(int cls, Random random) {
+    Set<Integer> result = new HashSet<>();
+    int later = classes - cls - 1;
+    int count = Math.min(later, nextFanout(random));
+    while (result.size() < count) {
+      result.add(cls + 1 + random.nextInt(later));
+    }
+    // close the cycle for each block of sccSize classes
+    if (sccSize > 1) {
+      int blockStart = cls - cls % sccSize;
+      int next = cls + 1;
+      if (next == classes || next == blockStart + sccSize) {
+        next = blockStart;
+      }
+      if (next != cls) {
+        result.add(next);
+      }
+    }
+    int[] array = new int[result.size()];
+    int i = 0;
+    for(int dep: result) {
+      array[i++] = dep;
+    }
+    return array;
+  }
+
+  byte[] generateClass(int cls, int[] deps) {
+    ClassWriter writer = new ClassWriter(0);
+    writer.visit(Opcodes.V1_7, Opcodes.ACC_PUBLIC, getClassName(cls), null,
+        "java/lang/Object", null);
+    for(int i=0; i < deps.length; ++i) {
+      writer.visitField(Opcodes.ACC_PUBLIC, "f" + i,
+          "L" + getClassName(deps[i]) + ";", null, null).visitEnd();
+    }
+    writer.visitEnd();
+    return writer.toByteArray();
+  }
+
+  private static void addEntry(ZipOutputStream out, String name,
+                               byte[] bytes) throws IOException {
+    out.putNextEntry(new ZipEntry(name));
+    out.write(bytes);
+    out.closeEntry();
+  }
+
+  /**
+   * Write the project.
+   * @param directory the directory to write to
+   * @return the tgf file
+   */
+  File generate(File directory) throws IOException {
+    File repository = new File(directory, "repository");
+    ZipOutputStream[] outputs = new ZipOutputStream[jars];
+    // the classes copied into other jars, written after their originals
+    List<List<Integer>> copies = new ArrayList<>(jars);
+    for(int j=0; j < jars; ++j) {
+      File jar = new File(repository, GROUP.replace('.', '/') + "/" +
+          getArtifactId(j) + "/1.0/" + getArtifactId(j) + "-1.0.jar");
+      if (!jar.getParentFile().isDirectory() && !jar.getParentFile().mkdirs()) {
+        throw new IOException("Can't create " + jar.getParentFile());
+      }
+      outputs[j] = new ZipOutputStream(new FileOutputStream(jar));
+      copies.add(new ArrayList<Integer>());
+    }
+    Random random = new Random(seed);
+    byte[][] bytes = new byte[classes][];
+    try (ZipOutputStream bundle = new ZipOutputStream(
+        new FileOutputStream(new File(directory, "bundle.jar")))) {
+      for(int cls=0; cls < classes; ++cls) {
+        int[] deps = getDependencies(cls, random);
+        edgeCount += deps.length;
+        bytes[cls] = generateClass(cls, deps);
+        String path = getClassName(cls) + ".class";
+        addEntry(outputs[getJar(cls)], path, bytes[cls]);
+        addEntry(bundle, path, bytes[cls]);
+        if (jars > 1 && random.nextDouble() < duplicateRate) {
+          int other = random.nextInt(jars - 1);
+          if (other >= getJar(cls)) {
+            other += 1;
+          }
+          copies.get(other).add(cls);
+          duplicateCount += 1;
+        }
+      }
+    }
+    for(int j=0; j < jars; ++j) {
+      for(int cls: copies.get(j)) {
+        addEntry(outputs[j], getClassName(cls) + ".class", bytes[cls]);
+      }
+      outputs[j].close();
+    }
+    File tgf = new File(directory, "graph.tgf");
+    try (PrintWriter out = new PrintWriter(new OutputStreamWriter(
+        new FileOutputStream(tgf), StandardCharsets.UTF_8))) {
+      for(int j=0; j < jars; ++j) {
+        out.println((j + 1) + " " + GROUP + ":" + getArtifactId(j) +
+            ":jar:1.0" + (j == 0 ? "" : ":compile"));
+      }
+      out.println("#");
+      for(int j=1; j < jars; ++j) {
+        out.println("1 " + (j + 1));
+      }
+    }
+    return tgf;
+  }
+
+  /**
+   * Parse the generator options.
+   * @return the index of the first argument that isn't an option
+   */
+  int parseOptions(String[] args, int arg) {
+    while (arg < args.length - 1 && args[arg].startsWith("-")) {
+      String value = args[arg + 1];
+      switch (args[arg]) {
+        case "-classes":
+          classes = Integer.parseInt(value);
+          break;
+        case "-jars":
+          jars = Integer.parseInt(value);
+          break;
+        case "-fanout":
+          fanout = Double.parseDouble(value);
+          break;
+        case "-powerlaw":
+          powerLaw = Double.parseDouble(value);
+          break;
+        case "-scc":
+          sccSize = Integer.parseInt(value);
+          break;
+        case "-duplicates":
+          duplicateRate = Double.parseDouble(value);
+          break;
+        case "-seed":
+          seed = Long.parseLong(value);
+          break;
+        default:
+          return arg;
+      }
+      arg += 2;
+    }
+    return arg;
+  }
+
+  public static void main(String[] args) throws IOException {
+    SyntheticProject project = new SyntheticProject();
+    int arg = project.parseOptions(args, 0);
+    if (arg != args.length - 1) {
+      System.err.println("Usage: SyntheticProject [-classes n] [-jars n]" +
+          " [-fanout mean] [-powerlaw alpha] [-scc size] [-duplicates rate]" +
+          " [-seed n] dir");
+      System.exit(1);
+    }
+    File tgf = project.generate(new File(args[arg]));
+    System.out.println("Generated " + project.classes + " classes with " +
+        project.edgeCount + " edges and " + project.duplicateCount +
+        " duplicates in " + project.jars + " jars.");
+    System.out.println("Run with -Dmaven.repo.local=" +
+        new File(args[arg], "repository").getAbsolutePath() + " on " + tgf);
+  }
+}
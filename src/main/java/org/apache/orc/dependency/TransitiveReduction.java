@@ -0,0 +1,324 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.orc.dependency;
+
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Reduces a class graph to the edges that matter for drawing it. Each cycle
+ * is collapsed into a single node and an edge between two nodes is dropped
+ * when a longer path already connects them, so the result has exactly the
+ * same reachability as the class graph. When the graph was analyzed with
+ * closures, the depends set of each class is used as the closure of its
+ * node. The nodes are reduced in parallel.
+ *
+ * Usage: TransitiveReduction [-reachable] [-json] [-threads N]
+ *            (graph.tgf|classpath|saved.graph) output
+ */
+public class TransitiveReduction {
+  // the number of nodes that each task reduces
+  private static final int CHUNK_SIZE = 256;
+
+  final DependencyGraph graph;
+  final StronglyConnected scc;
+  // the components to include
+  final boolean[] included;
+  // the edges between components, with the targets of each component in
+  // decreasing order, which is topological order
+  final int[] dagOffsets;
+  final int[] dagEdges;
+  // the closure of each component and the id that stands for the component
+  // in the closures
+  final BitSet[] closure;
+  final int[] closureId;
+  // the edges that are kept
+  int[] offsets;
+  int[] edges;
+
+  /**
+   * @param graph the class graph
+   * @param model the model that the graph was built from with closures, so
+   *              that its depends sets can be used, or null
+   * @param reachableOnly only include the classes reachable from the roots
+   */
+  TransitiveReduction(DependencyGraph graph, ProjectModel model,
+                      boolean reachableOnly) {
+    this.graph = graph;
+    scc = new StronglyConnected(graph.size(), graph.offsets, graph.edges);
+    included = new boolean[scc.count];
+    for(int c=0; c < scc.count; ++c) {
+      included[c] = !reachableOnly ||
+          graph.depth[scc.members[scc.memberOffsets[c]]] != Integer.MAX_VALUE;
+    }
+    dagOffsets = new int[scc.count + 1];
+    dagEdges = buildCondensation();
+    closure = new BitSet[scc.count];
+    closureId = new int[scc.count];
+    if (model != null) {
+      for(int c=0; c < scc.count; ++c) {
+        ClassModel cls = model.getClassModel(
+            graph.names[scc.members[scc.memberOffsets[c]]]);
+        closure[c] = cls.depends;
+        closureId[c] = cls.id;
+      }
+    } else {
+      buildClosures();
+    }
+  }
+
+  /**
+   * Build the edges between the included components without duplicates.
+   */
+  private int[] buildCondensation() {
+    int[] seen = new int[scc.count];
+    Arrays.fill(seen, -1);
+    int[] result = new int[graph.edgeCount()];
+    int posn = 0;
+    for(int c=0; c < scc.count; ++c) {
+      dagOffsets[c] = posn;
+      if (!included[c]) {
+        continue;
+      }
+      int start = posn;
+      for(int m=scc.memberOffsets[c]; m < scc.memberOffsets[c + 1]; ++m) {
+        int v = scc.members[m];
+        for(int e=graph.offsets[v]; e < graph.offsets[v + 1]; ++e) {
+          int target = scc.component[graph.edges[e]];
+          if (target != c && seen[target] != c) {
+            seen[target] = c;
+            result[posn++] = target;
+          }
+        }
+      }
+      Arrays.sort(result, start, posn);
+      // reverse the targets, so that they are in topological order
+      for(int i=start, j=posn - 1; i < j; ++i, --j) {
+        int tmp = result[i];
+        result[i] = result[j];
+        result[j] = tmp;
+      }
+    }
+    dagOffsets[scc.count] = posn;
+    return Arrays.copyOf(result, posn);
+  }
+
+  /**
+   * Compute the closure of each component from the sinks up, for graphs
+   * that were loaded without the depends sets.
+   */
+  private void buildClosures() {
+    for(int c=0; c < scc.count; ++c) {
+      closureId[c] = c;
+      if (!included[c]) {
+        continue;
+      }
+      BitSet result = new BitSet(c);
+      for(int e=dagOffsets[c]; e < dagOffsets[c + 1]; ++e) {
+        int target = dagEdges[e];
+        result.or(closure[target]);
+        result.set(target);
+      }
+      closure[c] = result;
+    }
+  }
+
+  /**
+   * Reduce the edges of a range of components. The targets are visited in
+   * topological order, so any other target that reaches a target has
+   * already been visited, and the target can be dropped if it is covered
+   * by the closures of the targets kept so far.
+   */
+  private int[][] reduce(int start, int end) {
+    int[][] result = new int[end - start][];
+    BitSet covered = new BitSet();
+    int[] kept = new int[16];
+    for(int c=start; c < end; ++c) {
+      int degree = dagOffsets[c + 1] - dagOffsets[c];
+      if (degree <= 1) {
+        result[c - start] = Arrays.copyOfRange(dagEdges, dagOffsets[c],
+            dagOffsets[c + 1]);
+        continue;
+      }
+      covered.clear();
+      if (kept.length < degree) {
+        kept = new int[degree];
+      }
+      int count = 0;
+      for(int e=dagOffsets[c]; e < dagOffsets[c + 1]; ++e) {
+        int target = dagEdges[e];
+        if (!covered.get(closureId[target])) {
+          kept[count++] = target;
+          covered.or(closure[target]);
+          covered.set(closureId[target]);
+        }
+      }
+      result[c - start] = Arrays.copyOf(kept, count);
+    }
+    return result;
+  }
+
+  void reduce(int threads) throws IOException {
+    ExecutorService pool = Executors.newFixedThreadPool(threads);
+    try {
+      List<Future<int[][]>> futures = new ArrayList<>();
+      for(int start=0; start < scc.count; start += CHUNK_SIZE) {
+        final int chunkStart = start;
+        final int chunkEnd = Math.min(scc.count, start + CHUNK_SIZE);
+        futures.add(pool.submit(new Callable<int[][]>() {
+          @Override
+          public int[][] call() {
+            return reduce(chunkStart, chunkEnd);
+          }
+        }));
+      }
+      int[][] targets = new int[scc.count][];
+      int total = 0;
+      for(int f=0; f < futures.size(); ++f) {
+        int[][] chunk = futures.get(f).get();
+        System.arraycopy(chunk, 0, targets, f * CHUNK_SIZE, chunk.length);
+        for(int[] list: chunk) {
+          total += list.length;
+        }
+      }
+      offsets = new int[scc.count + 1];
+      edges = new int[total];
+      int posn = 0;
+      for(int c=0; c < scc.count; ++c) {
+        offsets[c] = posn;
+        for(int target: targets[c]) {
+          edges[posn++] = target;
+        }
+      }
+      offsets[scc.count] = posn;
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IOException("Interrupted while reducing", e);
+    } catch (ExecutionException e) {
+      if (e.getCause() instanceof RuntimeException) {
+        throw (RuntimeException) e.getCause();
+      }
+      throw new IOException("Failed to reduce", e.getCause());
+    } finally {
+      pool.shutdownNow();
+    }
+  }
+
+  /**
+   * Make an exporter for the reduced graph, where each node is a component
+   * grouped by the jar of its first class.
+   */
+  GraphExporter getExporter() {
+    String[][] classes = new String[scc.count][];
+    String[] groups = new String[scc.count];
+    for(int c=0; c < scc.count; ++c) {
+      if (included[c]) {
+        int start = scc.memberOffsets[c];
+        int[] members = Arrays.copyOfRange(scc.members, start,
+            scc.memberOffsets[c + 1]);
+        // the ids are in name order
+        Arrays.sort(members);
+        classes[c] = new String[members.length];
+        for(int m=0; m < members.length; ++m) {
+          classes[c][m] = graph.names[members[m]];
+        }
+        int jar = graph.jar[members[0]];
+        groups[c] = jar < 0 ? null : graph.jarNames[jar];
+      }
+    }
+    return new GraphExporter(classes, groups, offsets, edges);
+  }
+
+  public static void main(String[] args) throws IOException {
+    boolean reachable = false;
+    boolean json = false;
+    int threads = Runtime.getRuntime().availableProcessors();
+    int arg = 0;
+    while (arg < args.length && args[arg].startsWith("-")) {
+      switch (args[arg]) {
+        case "-reachable":
+          reachable = true;
+          break;
+        case "-json":
+          json = true;
+          break;
+        case "-threads":
+          threads = Integer.parseInt(args[++arg]);
+          break;
+        default:
+          throw new IllegalArgumentException("Unknown option " + args[arg]);
+      }
+      arg += 1;
+    }
+    if (args.length - arg != 2) {
+      System.err.println("Usage: TransitiveReduction [-reachable] [-json]" +
+          " [-threads N] (graph.tgf|classpath|saved.graph) output");
+      System.exit(1);
+    }
+    String input = args[arg];
+    ProjectModel model = null;
+    DependencyGraph graph;
+    if (input.endsWith(".tgf") || ClassPathScanner.isClassPath(input)) {
+      model = ProjectModel.load(input, true);
+      graph = DependencyGraph.fromProject(model);
+    } else {
+      graph = DependencyGraph.read(input);
+    }
+    long start = System.nanoTime();
+    TransitiveReduction reduction =
+        new TransitiveReduction(graph, model, reachable);
+    reduction.reduce(threads);
+    long end = System.nanoTime();
+    int nodes = 0;
+    int classes = 0;
+    int classEdges = 0;
+    for(int c=0; c < reduction.scc.count; ++c) {
+      if (reduction.included[c]) {
+        nodes += 1;
+        for(int m=reduction.scc.memberOffsets[c];
+            m < reduction.scc.memberOffsets[c + 1]; ++m) {
+          int v = reduction.scc.members[m];
+          classes += 1;
+          classEdges += graph.offsets[v + 1] - graph.offsets[v];
+        }
+      }
+    }
+    System.out.println("Reduced " + classes + " classes with " + classEdges +
+        " edges to " + nodes + " nodes with " + reduction.edges.length +
+        " edges (from " + reduction.dagEdges.length + ") in " +
+        (end - start) / 1000000 + " ms.");
+    try (PrintStream out = new PrintStream(new FileOutputStream(
+        args[arg + 1]), false, "UTF-8")) {
+      if (json) {
+        reduction.getExporter().writeJson(out);
+      } else {
+        reduction.getExporter().writeDot(out);
+      }
+    }
+  }
+}
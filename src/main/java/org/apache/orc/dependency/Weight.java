@@ -0,0 +1,45 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.orc.dependency;
+
+/**
+ * What a class costs: one class, the size of its class file, its number of
+ * methods or its number of constant pool entries. The closures add these up
+ * over the classes that each class depends on.
+ */
+enum Weight {
+  COUNT, BYTES, METHODS, CONSTANTS;
+
+  static final int SIZE = values().length;
+
+  /**
+   * Get each weight of a class, indexed by ordinal.
+   * @param size the scanned size of the class or null if it is unknown
+   */
+  static int[] getSizes(DependencyVisitor.ClassSize size) {
+    int[] result = new int[SIZE];
+    result[COUNT.ordinal()] = 1;
+    if (size != null) {
+      result[BYTES.ordinal()] = size.bytes;
+      result[METHODS.ordinal()] = size.methods;
+      result[CONSTANTS.ordinal()] = size.constants;
+    }
+    return result;
+  }
+}
@@ -0,0 +1,122 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.orc.dependency;
+
+import java.util.BitSet;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class TestDominators {
+
+  /**
+   * Check the dominators against the definition: d dominates v if v can't
+   * be reached from the roots without going through d.
+   */
+  static void check(TestGraph graph) {
+    Dominators dom = new Dominators(graph.size, graph.offsets, graph.edges,
+        graph.roots);
+    BitSet reachable = graph.reach(graph.roots, -1);
+    BitSet[] dominated = new BitSet[graph.size];
+    for(int d=0; d < graph.size; ++d) {
+      dominated[d] = (BitSet) reachable.clone();
+      dominated[d].andNot(graph.reach(graph.roots, d));
+    }
+    assertEquals(graph + " order", reachable.cardinality() + 1,
+        dom.order.length);
+    for(int v=0; v < graph.size; ++v) {
+      String msg = graph + " node " + v;
+      if (!reachable.get(v)) {
+        assertFalse(msg, dom.isReachable(v));
+        assertEquals(msg, Dominators.UNREACHABLE, dom.idom[v]);
+        continue;
+      }
+      assertEquals(msg + " retained", dominated[v].cardinality(),
+          dom.retained[v]);
+      int idom = dom.idom[v];
+      for(int d=0; d < graph.size; ++d) {
+        if (d != v && dominated[d].get(v)) {
+          // every other dominator of v also dominates its immediate one
+          assertTrue(msg + " idom " + idom + " not under " + d,
+              idom != dom.superRoot && dominated[d].get(idom));
+        }
+      }
+      if (idom != dom.superRoot) {
+        assertTrue(msg + " idom " + idom, dominated[idom].get(v));
+      }
+    }
+  }
+
+  @Test
+  public void testDiamond() {
+    TestGraph graph = TestGraph.diamond();
+    check(graph);
+    Dominators dom = new Dominators(graph.size, graph.offsets, graph.edges,
+        graph.roots);
+    assertEquals(0, dom.idom[3]);
+    assertEquals(3, dom.idom[4]);
+    assertEquals(5, dom.retained[0]);
+  }
+
+  @Test
+  public void testCycle() {
+    check(TestGraph.cycle());
+  }
+
+  @Test
+  public void testSelfLoop() {
+    check(TestGraph.selfLoop());
+  }
+
+  @Test
+  public void testUnreachable() {
+    TestGraph graph = TestGraph.unreachable();
+    check(graph);
+    Dominators dom = new Dominators(graph.size, graph.offsets, graph.edges,
+        graph.roots);
+    assertEquals(3, dom.order.length);
+    assertFalse(dom.isReachable(2));
+  }
+
+  @Test
+  public void testCyclicSelfLoop() {
+    check(TestGraph.cyclicSelfLoop());
+  }
+
+  @Test
+  public void testRandom() {
+    for(TestGraph graph: TestGraph.all()) {
+      check(graph);
+    }
+  }
+
+  @Test
+  public void testRetainedWeight() {
+    TestGraph graph = TestGraph.diamond();
+    Dominators dom = new Dominators(graph.size, graph.offsets, graph.edges,
+        graph.roots);
+    long[] retained = dom.getRetained(new int[]{1, 10, 100, 1000, 10000});
+    assertEquals(11111, retained[0]);
+    assertEquals(10, retained[1]);
+    assertEquals(11000, retained[3]);
+  }
+}
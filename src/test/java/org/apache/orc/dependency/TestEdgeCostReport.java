@@ -0,0 +1,120 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.orc.dependency;
+
+import java.util.ArrayDeque;
+import java.util.BitSet;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+public class TestEdgeCostReport {
+
+  /**
+   * Find the classes reachable from the roots without using one edge.
+   */
+  static BitSet reachWithout(DependencyGraph graph, int source, int target) {
+    BitSet result = new BitSet(graph.size());
+    ArrayDeque<Integer> queue = new ArrayDeque<>();
+    for(int v=0; v < graph.size(); ++v) {
+      if (graph.depth[v] == 0) {
+        result.set(v);
+        queue.add(v);
+      }
+    }
+    while (!queue.isEmpty()) {
+      int v = queue.remove();
+      for(int e=graph.offsets[v]; e < graph.offsets[v + 1]; ++e) {
+        int w = graph.edges[e];
+        if ((v != source || w != target) && !result.get(w)) {
+          result.set(w);
+          queue.add(w);
+        }
+      }
+    }
+    return result;
+  }
+
+  /**
+   * Check each edge's exclusive cost by cutting it and searching again.
+   */
+  static void check(TestGraph shape) {
+    DependencyGraph graph = shape.toDependencyGraph();
+    EdgeCostReport report = new EdgeCostReport(graph);
+    int reachable = reachWithout(graph, -1, -1).cardinality();
+    int rootEdges = 0;
+    for(int v=0; v < graph.size(); ++v) {
+      if (graph.depth[v] == 0) {
+        rootEdges += graph.offsets[v + 1] - graph.offsets[v];
+      }
+      assertEquals(shape + " closure of " + v, graph.dependsCount[v],
+          report.getClosureSize(v));
+    }
+    assertEquals(shape.toString(), rootEdges, report.source.length);
+    for(int edge=0; edge < report.source.length; ++edge) {
+      int lost = reachable - reachWithout(graph, report.source[edge],
+          report.target[edge]).cardinality();
+      assertEquals(shape + " edge " + report.source[edge] + " -> " +
+          report.target[edge], lost, report.exclusive[edge]);
+    }
+  }
+
+  @Test
+  public void testDiamond() {
+    TestGraph shape = TestGraph.diamond();
+    check(shape);
+    EdgeCostReport report = new EdgeCostReport(shape.toDependencyGraph());
+    // each side of the diamond only loses itself, since the other side
+    // still reaches the bottom
+    assertEquals(2, report.source.length);
+    assertEquals(1, report.exclusive[0]);
+    assertEquals(1, report.exclusive[1]);
+  }
+
+  @Test
+  public void testCycle() {
+    TestGraph shape = TestGraph.cycle();
+    check(shape);
+    EdgeCostReport report = new EdgeCostReport(shape.toDependencyGraph());
+    assertEquals(4, report.exclusive[0]);
+  }
+
+  @Test
+  public void testSelfLoop() {
+    check(TestGraph.selfLoop());
+  }
+
+  @Test
+  public void testUnreachable() {
+    check(TestGraph.unreachable());
+  }
+
+  @Test
+  public void testCyclicSelfLoop() {
+    check(TestGraph.cyclicSelfLoop());
+  }
+
+  @Test
+  public void testRandom() {
+    for(TestGraph shape: TestGraph.all()) {
+      check(shape);
+    }
+  }
+}
@@ -0,0 +1,211 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.orc.dependency;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * A small graph stored as offsets and edges for the tests, with the naive
+ * searches that the algorithms are checked against.
+ */
+class TestGraph {
+  final String name;
+  final int size;
+  final int[] offsets;
+  final int[] edges;
+  final int[] roots;
+
+  /**
+   * @param pairs the edges as pairs of source and target
+   */
+  TestGraph(String name, int size, int[] roots, int... pairs) {
+    this.name = name;
+    this.size = size;
+    this.roots = roots;
+    offsets = new int[size + 1];
+    for(int i=0; i < pairs.length; i += 2) {
+      offsets[pairs[i] + 1] += 1;
+    }
+    for(int v=0; v < size; ++v) {
+      offsets[v + 1] += offsets[v];
+    }
+    edges = new int[pairs.length / 2];
+    int[] posn = Arrays.copyOf(offsets, size);
+    for(int i=0; i < pairs.length; i += 2) {
+      edges[posn[pairs[i]]++] = pairs[i + 1];
+    }
+    for(int v=0; v < size; ++v) {
+      Arrays.sort(edges, offsets[v], offsets[v + 1]);
+    }
+  }
+
+  static TestGraph diamond() {
+    return new TestGraph("diamond", 5, new int[]{0},
+        0, 1, 0, 2, 1, 3, 2, 3, 3, 4);
+  }
+
+  static TestGraph cycle() {
+    return new TestGraph("cycle", 5, new int[]{0},
+        0, 1, 1, 2, 2, 3, 3, 1, 3, 4);
+  }
+
+  static TestGraph selfLoop() {
+    return new TestGraph("self loop", 3, new int[]{0},
+        0, 0, 0, 1, 1, 1, 1, 2);
+  }
+
+  static TestGraph unreachable() {
+    return new TestGraph("unreachable", 5, new int[]{0},
+        0, 1, 2, 3, 3, 1);
+  }
+
+  static TestGraph cyclicSelfLoop() {
+    return new TestGraph("cycle with a self loop", 5, new int[]{0, 4},
+        0, 1, 1, 2, 2, 1, 2, 2, 2, 3, 4, 3);
+  }
+
+  static TestGraph random(Random random, int size, int edgeCount) {
+    int[] pairs = new int[edgeCount * 2];
+    for(int i=0; i < pairs.length; ++i) {
+      pairs[i] = random.nextInt(size);
+    }
+    int[] roots = new int[1 + random.nextInt(3)];
+    for(int r=0; r < roots.length; ++r) {
+      roots[r] = random.nextInt(size);
+    }
+    return new TestGraph("random " + size + "/" + edgeCount, size, roots,
+        pairs);
+  }
+
+  /**
+   * The fixed shapes and a set of random graphs with a fixed seed.
+   */
+  static List<TestGraph> all() {
+    List<TestGraph> result = new ArrayList<>();
+    result.add(diamond());
+    result.add(cycle());
+    result.add(selfLoop());
+    result.add(unreachable());
+    result.add(cyclicSelfLoop());
+    Random random = new Random(42);
+    for(int i=0; i < 100; ++i) {
+      int size = 1 + random.nextInt(40);
+      result.add(random(random, size, random.nextInt(3 * size)));
+    }
+    return result;
+  }
+
+  /**
+   * Find the nodes that are reachable from the given nodes, which are
+   * included, without going through the skipped node.
+   * @param skip the node to avoid or -1
+   */
+  BitSet reach(int[] from, int skip) {
+    BitSet result = new BitSet(size);
+    ArrayDeque<Integer> queue = new ArrayDeque<>();
+    for(int v: from) {
+      if (v != skip && !result.get(v)) {
+        result.set(v);
+        queue.add(v);
+      }
+    }
+    while (!queue.isEmpty()) {
+      int v = queue.remove();
+      for(int e=offsets[v]; e < offsets[v + 1]; ++e) {
+        int w = edges[e];
+        if (w != skip && !result.get(w)) {
+          result.set(w);
+          queue.add(w);
+        }
+      }
+    }
+    return result;
+  }
+
+  /**
+   * Find the nodes that a node depends on, which only includes the node
+   * itself if it is on a cycle.
+   */
+  BitSet depends(int v) {
+    BitSet result = new BitSet(size);
+    for(int e=offsets[v]; e < offsets[v + 1]; ++e) {
+      result.or(reach(new int[]{edges[e]}, -1));
+    }
+    return result;
+  }
+
+  /**
+   * Make a class graph with this shape, where node i is named "c" and i
+   * padded to three digits, so that the ids are in name order.
+   */
+  DependencyGraph toDependencyGraph() {
+    String[] names = new String[size];
+    int[] jar = new int[size];
+    int[] depth = new int[size];
+    int[] dependsCount = new int[size];
+    Arrays.fill(jar, -1);
+    Arrays.fill(depth, Integer.MAX_VALUE);
+    ArrayDeque<Integer> queue = new ArrayDeque<>();
+    for(int v: roots) {
+      if (depth[v] != 0) {
+        depth[v] = 0;
+        queue.add(v);
+      }
+    }
+    while (!queue.isEmpty()) {
+      int v = queue.remove();
+      for(int e=offsets[v]; e < offsets[v + 1]; ++e) {
+        if (depth[edges[e]] == Integer.MAX_VALUE) {
+          depth[edges[e]] = depth[v] + 1;
+          queue.add(edges[e]);
+        }
+      }
+    }
+    for(int v=0; v < size; ++v) {
+      names[v] = String.format("c%03d", v);
+      dependsCount[v] = depends(v).cardinality();
+    }
+    // drop the duplicate edges, since the class graphs don't have them
+    int[] newOffsets = new int[size + 1];
+    int[] newEdges = new int[edges.length];
+    int posn = 0;
+    for(int v=0; v < size; ++v) {
+      newOffsets[v] = posn;
+      for(int e=offsets[v]; e < offsets[v + 1]; ++e) {
+        if (e == offsets[v] || edges[e] != edges[e - 1]) {
+          newEdges[posn++] = edges[e];
+        }
+      }
+    }
+    newOffsets[size] = posn;
+    return new DependencyGraph(names, new String[0], jar, depth,
+        dependsCount, new int[Weight.SIZE][size], new long[Weight.SIZE][size],
+        newOffsets, Arrays.copyOf(newEdges, posn));
+  }
+
+  @Override
+  public String toString() {
+    return name;
+  }
+}
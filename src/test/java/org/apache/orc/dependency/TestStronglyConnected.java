@@ -0,0 +1,120 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.orc.dependency;
+
+import java.util.BitSet;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class TestStronglyConnected {
+
+  /**
+   * Check the components against the definition: two nodes are in the same
+   * component if each one reaches the other.
+   */
+  static void check(TestGraph graph) {
+    StronglyConnected scc = new StronglyConnected(graph.size, graph.offsets,
+        graph.edges);
+    BitSet[] reach = new BitSet[graph.size];
+    for(int v=0; v < graph.size; ++v) {
+      reach[v] = graph.reach(new int[]{v}, -1);
+    }
+    for(int u=0; u < graph.size; ++u) {
+      for(int v=0; v < graph.size; ++v) {
+        assertEquals(graph + " nodes " + u + " and " + v,
+            reach[u].get(v) && reach[v].get(u),
+            scc.component[u] == scc.component[v]);
+      }
+      // the components are in reverse topological order
+      for(int e=graph.offsets[u]; e < graph.offsets[u + 1]; ++e) {
+        assertTrue(graph + " edge " + u + " -> " + graph.edges[e],
+            scc.component[u] >= scc.component[graph.edges[e]]);
+      }
+    }
+    assertEquals(graph.toString(), graph.size,
+        scc.memberOffsets[scc.count]);
+    for(int c=0; c < scc.count; ++c) {
+      assertTrue(graph + " component " + c, scc.size(c) > 0);
+      int first = scc.members[scc.memberOffsets[c]];
+      for(int m=scc.memberOffsets[c]; m < scc.memberOffsets[c + 1]; ++m) {
+        assertEquals(graph + " component " + c, c,
+            scc.component[scc.members[m]]);
+      }
+      assertEquals(graph + " component " + c, graph.depends(first).get(first),
+          scc.cyclic[c]);
+    }
+  }
+
+  @Test
+  public void testDiamond() {
+    TestGraph graph = TestGraph.diamond();
+    check(graph);
+    StronglyConnected scc = new StronglyConnected(graph.size, graph.offsets,
+        graph.edges);
+    assertEquals(5, scc.count);
+    assertFalse(scc.cyclic[scc.component[3]]);
+  }
+
+  @Test
+  public void testCycle() {
+    TestGraph graph = TestGraph.cycle();
+    check(graph);
+    StronglyConnected scc = new StronglyConnected(graph.size, graph.offsets,
+        graph.edges);
+    assertEquals(3, scc.count);
+    assertEquals(3, scc.size(scc.component[1]));
+    assertTrue(scc.cyclic[scc.component[1]]);
+  }
+
+  @Test
+  public void testSelfLoop() {
+    TestGraph graph = TestGraph.selfLoop();
+    check(graph);
+    StronglyConnected scc = new StronglyConnected(graph.size, graph.offsets,
+        graph.edges);
+    assertEquals(3, scc.count);
+    assertTrue(scc.cyclic[scc.component[0]]);
+    assertFalse(scc.cyclic[scc.component[2]]);
+  }
+
+  @Test
+  public void testUnreachable() {
+    check(TestGraph.unreachable());
+  }
+
+  @Test
+  public void testCyclicSelfLoop() {
+    TestGraph graph = TestGraph.cyclicSelfLoop();
+    check(graph);
+    StronglyConnected scc = new StronglyConnected(graph.size, graph.offsets,
+        graph.edges);
+    assertEquals(2, scc.size(scc.component[2]));
+  }
+
+  @Test
+  public void testRandom() {
+    for(TestGraph graph: TestGraph.all()) {
+      check(graph);
+    }
+  }
+}
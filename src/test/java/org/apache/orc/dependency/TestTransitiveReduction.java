@@ -0,0 +1,156 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.orc.dependency;
+
+import java.io.IOException;
+import java.util.BitSet;
+import java.util.Random;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class TestTransitiveReduction {
+
+  /**
+   * Find the components that a component reaches in the reduced graph.
+   */
+  static BitSet reduced(TransitiveReduction reduction, int c) {
+    BitSet result = new BitSet();
+    int[] queue = new int[reduction.scc.count];
+    int head = 0;
+    int tail = 0;
+    queue[tail++] = c;
+    while (head < tail) {
+      int v = queue[head++];
+      for(int e=reduction.offsets[v]; e < reduction.offsets[v + 1]; ++e) {
+        int w = reduction.edges[e];
+        if (!result.get(w)) {
+          result.set(w);
+          queue[tail++] = w;
+        }
+      }
+    }
+    return result;
+  }
+
+  /**
+   * Check that the reduced graph has the same reachability between the
+   * included components as the class graph and that no edge is implied by
+   * the other edges.
+   */
+  static void check(TestGraph shape, boolean reachableOnly,
+                    int threads) throws IOException {
+    DependencyGraph graph = shape.toDependencyGraph();
+    TransitiveReduction reduction = new TransitiveReduction(graph, null,
+        reachableOnly);
+    reduction.reduce(threads);
+    StronglyConnected scc = reduction.scc;
+    for(int c=0; c < scc.count; ++c) {
+      String msg = shape + " component " + c;
+      int first = scc.members[scc.memberOffsets[c]];
+      assertEquals(msg, !reachableOnly ||
+          graph.depth[first] != Integer.MAX_VALUE, reduction.included[c]);
+      if (!reduction.included[c]) {
+        assertEquals(msg, reduction.offsets[c], reduction.offsets[c + 1]);
+        continue;
+      }
+      BitSet depends = shape.depends(first);
+      BitSet expected = new BitSet();
+      for(int v=0; v < shape.size; ++v) {
+        if (scc.component[v] != c && depends.get(v)) {
+          expected.set(scc.component[v]);
+        }
+      }
+      assertEquals(msg, expected, reduced(reduction, c));
+      for(int e=reduction.offsets[c]; e < reduction.offsets[c + 1]; ++e) {
+        int target = reduction.edges[e];
+        assertFalse(msg + " self edge", target == c);
+        // no other kept edge may lead to this target
+        for(int o=reduction.offsets[c]; o < reduction.offsets[c + 1]; ++o) {
+          int other = reduction.edges[o];
+          assertTrue(msg + " edge to " + target + " implied by " + other,
+              other == target || !reduced(reduction, other).get(target));
+        }
+      }
+    }
+  }
+
+  static void check(TestGraph shape) throws IOException {
+    check(shape, false, 1);
+    check(shape, true, 1);
+  }
+
+  @Test
+  public void testDiamond() throws IOException {
+    TestGraph shape = TestGraph.diamond();
+    check(shape);
+    TransitiveReduction reduction = new TransitiveReduction(
+        shape.toDependencyGraph(), null, false);
+    reduction.reduce(1);
+    // no edge of a diamond is implied by the others
+    assertEquals(5, reduction.edges.length);
+  }
+
+  @Test
+  public void testShortcut() throws IOException {
+    TestGraph shape = new TestGraph("shortcut", 3, new int[]{0},
+        0, 1, 1, 2, 0, 2);
+    check(shape);
+    TransitiveReduction reduction = new TransitiveReduction(
+        shape.toDependencyGraph(), null, false);
+    reduction.reduce(1);
+    assertEquals(2, reduction.edges.length);
+  }
+
+  @Test
+  public void testCycle() throws IOException {
+    check(TestGraph.cycle());
+  }
+
+  @Test
+  public void testSelfLoop() throws IOException {
+    check(TestGraph.selfLoop());
+  }
+
+  @Test
+  public void testUnreachable() throws IOException {
+    check(TestGraph.unreachable());
+  }
+
+  @Test
+  public void testCyclicSelfLoop() throws IOException {
+    check(TestGraph.cyclicSelfLoop());
+  }
+
+  @Test
+  public void testRandom() throws IOException {
+    for(TestGraph shape: TestGraph.all()) {
+      check(shape);
+    }
+  }
+
+  @Test
+  public void testThreads() throws IOException {
+    // enough components for several chunks
+    check(TestGraph.random(new Random(7), 1000, 1500), false, 4);
+  }
+}